@@ -1,6 +1,7 @@
 plugins {
     id("java")
     id("application")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "org.example"
@@ -34,6 +35,83 @@ tasks.test {
     useJUnitPlatform()
 }
 
+// Микробенчмарки горячих CPU-путей: ./gradlew jmh (исходники — src/jmh/java, фикстуры — src/jmh/resources)
+jmh {
+    warmupIterations.set(2)
+    iterations.set(5)
+    fork.set(1)
+    resultFormat.set("JSON")
+}
+
+// Сквозной замер на локальном фейковом SkillFactory (нужен Chrome): ./gradlew spaBench
+tasks.register<JavaExec>("spaBench") {
+    group = "benchmark"
+    description = "renderWithLogin + runChecksWithHtml против FakeSkillFactory, время по целям"
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("org.example.SpaBenchmark")
+    val port = "18080"
+    val base = "http://127.0.0.1:$port"
+    environment(
+        mapOf(
+            "FAKE_SF_PORT" to port,
+            "BOT_TOKEN" to "0:spa-bench",
+            "WATCH_URL" to "$base/learning/course/course-v1:fake+JAVA/home",
+            "WATCH_LOGIN_URL" to "$base/learning/login",
+            "WATCH_USERNAME" to "bench@example.com",
+            "WATCH_PASSWORD" to "bench",
+            "RENDER_HEADLESS" to "true",
+            "PERSIST_COOKIES" to "false",
+            "WAIT_AFTER_LOGIN_MS" to "0"
+        )
+    )
+    // файл состояния целей — в build/, не в корне репозитория
+    workingDir = layout.buildDirectory.dir("spa-bench").get().asFile
+    doFirst { workingDir.mkdirs() }
+}
+
+// Прогон целей на записанных кассетах (NETWORK_TAPE=record у бота), без сети: ./gradlew replayBench
+tasks.register<JavaExec>("replayBench") {
+    group = "benchmark"
+    description = "runChecksWithHtml на кассетах NetworkTape, время по целям"
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("org.example.ReplayBenchmark")
+    environment("NETWORK_TAPE", "replay")
+    environment("NETWORK_TAPE_DIR", System.getenv("NETWORK_TAPE_DIR") ?: "$projectDir/network-tapes")
+    // файл состояния — в build/, боевой watch-state.json не трогаем
+    workingDir = layout.buildDirectory.dir("replay-bench").get().asFile
+    doFirst { workingDir.mkdirs() }
+}
+
+// Нагрузочный тест отправки: BotWatcher против фейкового Bot API (p50/p99 команд, отправок/с):
+// ./gradlew telegramLoad (long polling) | telegramLoadWebhook (апдейты приходят на встроенный webhook)
+for ((taskName, webhook) in listOf("telegramLoad" to false, "telegramLoadWebhook" to true)) {
+    tasks.register<JavaExec>(taskName) {
+        group = "benchmark"
+        description = "Команды сотен чатов и рассылка изменений через FakeBotApi" + if (webhook) " (webhook)" else ""
+        classpath = sourceSets["jmh"].runtimeClasspath
+        mainClass.set("org.example.TelegramLoadTest")
+        environment(
+            mapOf(
+                "BOT_TOKEN" to "0:load",
+                "TELEGRAM_API_URL" to "http://127.0.0.1:18081",
+                "WATCH_URL" to "http://127.0.0.1:18080/learning/course/course-v1:fake+JAVA/home"
+            )
+        )
+        if (webhook) {
+            environment(
+                mapOf(
+                    "WEBHOOK_URL" to "http://127.0.0.1:18082/telegram",
+                    "WEBHOOK_PORT" to "18082",
+                    "WEBHOOK_BIND" to "127.0.0.1",
+                    "WEBHOOK_SECRET" to "load-test-secret"
+                )
+            )
+        }
+        workingDir = layout.buildDirectory.dir("telegram-load").get().asFile
+        doFirst { workingDir.mkdirs() }
+    }
+}
+
 application {
     // замени на свой пакет/класс
     mainClass.set("org.example.BotWatcher")
@@ -0,0 +1,343 @@
+package org.example;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Локальная подмена Telegram Bot API для нагрузочного теста отправки (TELEGRAM_API_URL → сюда).
+ *
+ * Что умеет:
+ *  - getUpdates — long polling по очереди апдейтов, которую наполняет тест ({@link #command})
+ *  - setWebhook / deleteWebhook — пока webhook задан, апдейты не копятся, а POST'ятся на него
+ *    (с X-Telegram-Bot-Api-Secret-Token; не 2xx — повтор через секунду, как у Telegram), getUpdates → 409
+ *  - sendMessage / sendDocument — отвечают как настоящий API, с задержкой latencyMs ± jitterMs
+ *  - с вероятностью rateLimitRate отвечают 429 с parameters.retry_after = retryAfterS
+ *  - остальные методы — {"ok":true,"result":true}
+ *
+ * Считает вызовы по методам и число 429; на каждый успешный sendMessage зовёт слушатель с chat_id.
+ */
+final class FakeBotApi implements AutoCloseable {
+
+    private static final Gson GSON = new Gson();
+    private static final Pattern PATH = Pattern.compile("^/bot[^/]+/([A-Za-z]+)$");
+    private static final int PUSH_ATTEMPTS = 5;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMs;
+    private final long jitterMs;
+    private final double rateLimitRate;
+    private final int retryAfterS;
+
+    // очередь апдейтов для getUpdates
+    private final Deque<JsonObject> updates = new ArrayDeque<>();
+    private final AtomicInteger updateId = new AtomicInteger();
+    private final AtomicLong messageId = new AtomicLong();
+
+    // webhook: адрес и секрет из setWebhook
+    private volatile String webhookUrl;
+    private volatile String webhookSecret;
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final ScheduledExecutorService pusher = Executors.newScheduledThreadPool(2, r -> {
+        Thread t = new Thread(r, "fake-bot-api-push");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder pushRetries = new LongAdder();
+    private volatile LongConsumer onMessage = chatId -> {
+    };
+
+    private FakeBotApi(int port, long latencyMs, long jitterMs, double rateLimitRate, int retryAfterS) throws IOException {
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+        this.rateLimitRate = rateLimitRate;
+        this.retryAfterS = retryAfterS;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/", this::handle);
+        // long polling держит поток — пул без верхней границы
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "fake-bot-api");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+    }
+
+    static FakeBotApi start(int port, long latencyMs, long jitterMs, double rateLimitRate, int retryAfterS)
+            throws IOException {
+        FakeBotApi api = new FakeBotApi(port, latencyMs, jitterMs, rateLimitRate, retryAfterS);
+        api.server.start();
+        return api;
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    void onMessage(LongConsumer listener) {
+        this.onMessage = listener;
+    }
+
+    /**
+     * Сообщение пользователя с текстом (командой) в очередь getUpdates.
+     */
+    void command(long chatId, String text) {
+        JsonObject chat = new JsonObject();
+        chat.addProperty("id", chatId);
+        chat.addProperty("type", "private");
+        JsonObject from = new JsonObject();
+        from.addProperty("id", chatId);
+        from.addProperty("is_bot", false);
+        from.addProperty("first_name", "load-" + chatId);
+        JsonObject message = new JsonObject();
+        message.addProperty("message_id", messageId.incrementAndGet());
+        message.addProperty("date", System.currentTimeMillis() / 1000);
+        message.add("chat", chat);
+        message.add("from", from);
+        message.addProperty("text", text);
+        JsonObject update = new JsonObject();
+        update.addProperty("update_id", updateId.incrementAndGet());
+        update.add("message", message);
+        String hook = webhookUrl;
+        if (hook != null) {
+            push(hook, update.toString(), 1);
+            return;
+        }
+        synchronized (updates) {
+            updates.addLast(update);
+            updates.notifyAll();
+        }
+    }
+
+    /**
+     * Доставка апдейта на webhook; не 2xx или ошибка — повтор через секунду.
+     */
+    private void push(String hook, String body, int attempt) {
+        HttpRequest.Builder req = HttpRequest.newBuilder(URI.create(hook))
+                .timeout(Duration.ofSeconds(10))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        String secret = webhookSecret;
+        if (secret != null && !secret.isEmpty()) req.header("X-Telegram-Bot-Api-Secret-Token", secret);
+        http.sendAsync(req.build(), HttpResponse.BodyHandlers.discarding()).whenComplete((res, err) -> {
+            boolean ok = err == null && res.statusCode() / 100 == 2;
+            if (ok || attempt >= PUSH_ATTEMPTS || pusher.isShutdown()) return;
+            pushRetries.increment();
+            pusher.schedule(() -> push(hook, body, attempt + 1), 1, TimeUnit.SECONDS);
+        });
+    }
+
+    long calls(String method) {
+        LongAdder a = calls.get(method);
+        return a == null ? 0 : a.sum();
+    }
+
+    long rateLimited() {
+        return rateLimited.sum();
+    }
+
+    /**
+     * Повторные доставки на webhook (эндпоинт бота ответил не 2xx — например, очередь полна).
+     */
+    long pushRetries() {
+        return pushRetries.sum();
+    }
+
+    @Override
+    public void close() {
+        synchronized (updates) {
+            updates.notifyAll();
+        }
+        pusher.shutdownNow();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /* ======================= обработчики ======================= */
+
+    private void handle(HttpExchange ex) throws IOException {
+        Matcher m = PATH.matcher(ex.getRequestURI().getPath());
+        if (!m.matches()) {
+            reply(ex, 404, error(404, "Not Found"));
+            return;
+        }
+        String method = m.group(1);
+        byte[] raw = ex.getRequestBody().readAllBytes();
+        calls.computeIfAbsent(method, k -> new LongAdder()).increment();
+
+        switch (method) {
+            case "getUpdates" -> {
+                if (webhookUrl != null) {
+                    reply(ex, 409, error(409, "Conflict: can't use getUpdates method while webhook is active"));
+                    return;
+                }
+                reply(ex, 200, ok(getUpdates(json(raw))));
+            }
+            case "setWebhook" -> {
+                webhookSecret = field(raw, "secret_token");
+                webhookUrl = field(raw, "url");
+                reply(ex, 200, ok(GSON.toJsonTree(true)));
+            }
+            case "deleteWebhook" -> {
+                webhookUrl = null;
+                reply(ex, 200, ok(GSON.toJsonTree(true)));
+            }
+            case "sendMessage", "sendDocument" -> {
+                pause(latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextLong(-jitterMs, jitterMs + 1) : 0));
+                if (rateLimitRate > 0 && ThreadLocalRandom.current().nextDouble() < rateLimitRate) {
+                    rateLimited.increment();
+                    JsonObject err = error(429, "Too Many Requests: retry after " + retryAfterS);
+                    JsonObject params = new JsonObject();
+                    params.addProperty("retry_after", retryAfterS);
+                    err.add("parameters", params);
+                    reply(ex, 429, err);
+                    return;
+                }
+                long chatId = parseLong(field(raw, "chat_id"));
+                reply(ex, 200, ok(sentMessage(chatId, method)));
+                if ("sendMessage".equals(method)) onMessage.accept(chatId);
+            }
+            default -> reply(ex, 200, ok(GSON.toJsonTree(true)));
+        }
+    }
+
+    /**
+     * Long polling: отдаём апдейты с id ≥ offset, ждём до timeout секунд, если их нет.
+     */
+    private JsonElement getUpdates(JsonObject req) {
+        int offset = req.has("offset") ? req.get("offset").getAsInt() : 0;
+        int limit = req.has("limit") ? req.get("limit").getAsInt() : 100;
+        long timeoutMs = (req.has("timeout") ? req.get("timeout").getAsLong() : 0) * 1000;
+        long until = System.currentTimeMillis() + timeoutMs;
+        JsonArray out = new JsonArray();
+        synchronized (updates) {
+            // подтверждённые апдейты больше не нужны
+            while (!updates.isEmpty() && updates.peekFirst().get("update_id").getAsInt() < offset) updates.pollFirst();
+            while (updates.isEmpty() && !executor.isShutdown()) {
+                long left = until - System.currentTimeMillis();
+                if (left <= 0) break;
+                try {
+                    updates.wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            for (JsonObject u : updates) {
+                if (out.size() >= limit) break;
+                out.add(u);
+            }
+        }
+        return out;
+    }
+
+    private JsonObject sentMessage(long chatId, String method) {
+        JsonObject chat = new JsonObject();
+        chat.addProperty("id", chatId);
+        chat.addProperty("type", "private");
+        JsonObject message = new JsonObject();
+        message.addProperty("message_id", messageId.incrementAndGet());
+        message.addProperty("date", System.currentTimeMillis() / 1000);
+        message.add("chat", chat);
+        if ("sendMessage".equals(method)) message.addProperty("text", "");
+        return message;
+    }
+
+    /* ======================= утилиты ======================= */
+
+    private static JsonObject json(byte[] raw) {
+        if (raw.length == 0) return new JsonObject();
+        try {
+            JsonElement el = JsonParser.parseString(new String(raw, StandardCharsets.UTF_8));
+            return el.isJsonObject() ? el.getAsJsonObject() : new JsonObject();
+        } catch (Exception e) {
+            return new JsonObject();
+        }
+    }
+
+    /**
+     * Поле запроса: тело — JSON или multipart/form-data (так клиент шлёт документы и setWebhook).
+     */
+    private static String field(byte[] raw, String name) {
+        String body = new String(raw, StandardCharsets.UTF_8);
+        if (body.startsWith("{")) {
+            JsonObject o = json(raw);
+            return o.has(name) && !o.get(name).isJsonNull() ? o.get(name).getAsString() : null;
+        }
+        Matcher m = Pattern.compile("name=\"" + Pattern.quote(name) + "\"\r\n(?:[^\r\n]+\r\n)*\r\n([^\r\n]*)")
+                .matcher(body);
+        return m.find() ? m.group(1) : null;
+    }
+
+    private static long parseLong(String s) {
+        try {
+            return s == null ? 0 : Long.parseLong(s.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static JsonObject ok(JsonElement result) {
+        JsonObject o = new JsonObject();
+        o.addProperty("ok", true);
+        o.add("result", result);
+        return o;
+    }
+
+    private static JsonObject error(int code, String description) {
+        JsonObject o = new JsonObject();
+        o.addProperty("ok", false);
+        o.addProperty("error_code", code);
+        o.addProperty("description", description);
+        return o;
+    }
+
+    private static void pause(long ms) {
+        if (ms <= 0) return;
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void reply(HttpExchange ex, int status, JsonObject body) throws IOException {
+        byte[] bytes = GSON.toJson(body).getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
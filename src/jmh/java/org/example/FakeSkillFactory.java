@@ -0,0 +1,323 @@
+package org.example;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Локальная подмена apps.skillfactory.ru для сквозных замеров без сети.
+ *
+ * Что отдаёт:
+ *  - /learning/login — форма как у настоящего (input[name=email], input[name=password],
+ *    button.sf-auth-page-layout__submit-btn); POST ставит куку sessionid и уводит на next
+ *  - /learning/course/{курс}/home | /announcements | /module/{n} — SPA-оболочка: пустой #root,
+ *    разметку строит скрипт, outline лежит в div.sf-outline-page__outline-container (те же пути, что в SEL_JAVA_*)
+ *  - /api/outline, /api/announcements, /api/module/{n} — JSON с задержкой latencyMs ± jitterMs;
+ *    пока запрос идёт (и ещё skeletonMs после) на странице висит .sf-skeleton
+ *
+ * Без куки сессии страницы курса редиректят на логин — так проверяются и логин, и перелогин.
+ */
+final class FakeSkillFactory implements AutoCloseable {
+
+    static final String COURSE_PATH = "/learning/course/course-v1:fake+JAVA/";
+    static final String SESSION_COOKIE = "sessionid";
+
+    // пункты outline; 3, 6 и 7 — те, по которым ходят встроенные цели
+    private static final List<String> MODULES = List.of(
+            "Введение в профессию",
+            "Основы Git",
+            "Программирование на языке Java",
+            "Базы данных и SQL",
+            "Сети и протоколы",
+            "Основы конвейерной разработки",
+            "Алгоритмы и структуры данных",
+            "Итоговый проект");
+
+    private static final Gson GSON = new Gson();
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMs;
+    private final long jitterMs;
+    private final long skeletonMs;
+    private final Set<String> sessions = Collections.synchronizedSet(new HashSet<>());
+    private final AtomicLong apiCalls = new AtomicLong();
+
+    private FakeSkillFactory(int port, long latencyMs, long jitterMs, long skeletonMs) throws IOException {
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+        this.skeletonMs = skeletonMs;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/learning/login", this::login);
+        server.createContext("/learning/course/", this::course);
+        server.createContext("/api/", this::api);
+        // задержки API не должны занимать поток, отдающий страницы
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "fake-sf-http");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Поднять сервер; port = 0 — свободный порт (см. {@link #baseUrl()}).
+     */
+    static FakeSkillFactory start(int port, long latencyMs, long jitterMs, long skeletonMs) throws IOException {
+        FakeSkillFactory f = new FakeSkillFactory(port, latencyMs, jitterMs, skeletonMs);
+        f.server.start();
+        return f;
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    String loginUrl() {
+        return baseUrl() + "/learning/login";
+    }
+
+    String homeUrl() {
+        return baseUrl() + COURSE_PATH + "home";
+    }
+
+    long apiCalls() {
+        return apiCalls.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /* ======================= обработчики ======================= */
+
+    private void login(HttpExchange ex) throws IOException {
+        Map<String, String> query = form(ex.getRequestURI().getRawQuery());
+        String next = query.getOrDefault("next", homeUrl());
+        if ("POST".equals(ex.getRequestMethod())) {
+            Map<String, String> body = form(new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            if (body.getOrDefault("email", "").isBlank() || body.getOrDefault("password", "").isBlank()) {
+                send(ex, 200, "text/html", loginPage(next, "Введите email и пароль"));
+                return;
+            }
+            String sid = UUID.randomUUID().toString();
+            sessions.add(sid);
+            ex.getResponseHeaders().add("Set-Cookie", SESSION_COOKIE + "=" + sid + "; Path=/");
+            redirect(ex, next);
+            return;
+        }
+        send(ex, 200, "text/html", loginPage(next, ""));
+    }
+
+    private void course(HttpExchange ex) throws IOException {
+        if (!authorized(ex)) {
+            String back = baseUrl() + ex.getRequestURI();
+            redirect(ex, "/learning/login?next=" + URLEncoder.encode(back, StandardCharsets.UTF_8));
+            return;
+        }
+        send(ex, 200, "text/html", spaShell());
+    }
+
+    private void api(HttpExchange ex) throws IOException {
+        if (!authorized(ex)) {
+            send(ex, 401, "application/json", "{\"detail\":\"Authentication credentials were not provided.\"}");
+            return;
+        }
+        apiCalls.incrementAndGet();
+        pause(latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextLong(-jitterMs, jitterMs + 1) : 0));
+
+        String path = ex.getRequestURI().getPath();
+        Object body;
+        if (path.equals("/api/outline")) {
+            body = Map.of("title", "Java-разработчик", "modules", MODULES);
+        } else if (path.equals("/api/announcements")) {
+            body = Map.of("items", List.of(
+                    Map.of("date", "2025-09-01", "text", "Старт потока: расписание вебинаров опубликовано."),
+                    Map.of("date", "2025-09-15", "text", "Дедлайн по модулю «Основы Git» — 30 сентября."),
+                    Map.of("date", "2025-10-01", "text", "Открыт модуль «Программирование на языке Java».")));
+        } else if (path.startsWith("/api/module/")) {
+            int n = parseModule(path.substring("/api/module/".length()));
+            if (n < 1 || n > MODULES.size()) {
+                send(ex, 404, "application/json", "{\"detail\":\"Not found.\"}");
+                return;
+            }
+            List<String> lessons = new ArrayList<>();
+            for (int i = 1; i <= 6; i++) lessons.add(n + "." + i + ". " + MODULES.get(n - 1) + ": урок " + i);
+            body = Map.of("title", MODULES.get(n - 1), "lessons", lessons);
+        } else {
+            send(ex, 404, "application/json", "{\"detail\":\"Not found.\"}");
+            return;
+        }
+        send(ex, 200, "application/json", GSON.toJson(body));
+    }
+
+    /* ======================= страницы ======================= */
+
+    private static String loginPage(String next, String error) {
+        String action = "/learning/login?next=" + URLEncoder.encode(next, StandardCharsets.UTF_8);
+        return """
+                <!doctype html>
+                <html lang="ru"><head><meta charset="utf-8"><title>Вход — SkillFactory</title></head>
+                <body>
+                <div class="sf-auth-page-layout">
+                  <form method="post" action="%s">
+                    <p class="sf-auth-page-layout__error">%s</p>
+                    <input name="email" type="email" placeholder="Email">
+                    <input name="password" type="password" placeholder="Пароль">
+                    <button type="submit" class="sf-auth-page-layout__submit-btn">Войти</button>
+                  </form>
+                </div>
+                </body></html>
+                """.formatted(action.replace("&", "&amp;").replace("\"", "&quot;"), error);
+    }
+
+    /**
+     * Оболочка SPA: #root пустой, всё строит скрипт после fetch — как у настоящего React-приложения.
+     * Ветка DOM до outline повторяет боевую: #root > div > div > div > div > main > div > div.sf-outline-page__outline-container.
+     */
+    private String spaShell() {
+        return """
+                <!doctype html>
+                <html lang="ru"><head><meta charset="utf-8"><title>Курс — SkillFactory</title></head>
+                <body>
+                <div id="root"></div>
+                <script>
+                (function () {
+                  const SKELETON_MS = %d;
+                  const COURSE = "%s";
+                  const root = document.getElementById("root");
+                  let outline = null;
+
+                  function esc(s) {
+                    return String(s).replace(/[&<>"]/g, c => ({"&": "&amp;", "<": "&lt;", ">": "&gt;", '"': "&quot;"}[c]));
+                  }
+                  function route() {
+                    const p = location.pathname;
+                    return p.startsWith(COURSE) ? p.substring(COURSE.length) : "home";
+                  }
+                  function go(r) {
+                    history.pushState({}, "", COURSE + r);
+                    render();
+                  }
+                  function load(url) {
+                    return fetch(url, {credentials: "same-origin"}).then(r => {
+                      if (r.status === 401) { location.href = "/learning/login?next=" + encodeURIComponent(location.href); }
+                      return r.json();
+                    }).then(data => new Promise(ok => setTimeout(() => ok(data), SKELETON_MS)));
+                  }
+                  function nav() {
+                    if (!outline) return '<div class="sf-skeleton" aria-busy="true">Загрузка программы…</div>';
+                    return "<nav><ul>" + outline.modules.map((m, i) =>
+                      '<li class="sf-outline-item"><span data-go="module/' + (i + 1) + '">' + esc(m) + "</span></li>").join("") + "</ul></nav>";
+                  }
+                  function paint(content) {
+                    root.innerHTML =
+                      '<div class="sf-app"><div class="sf-layout"><div class="sf-layout__body"><div class="sf-page">' +
+                      '<header class="sf-header"><a href="#" data-go="home">Курс</a> <a href="#" data-go="announcements">Объявления</a></header>' +
+                      "<main><div>" +
+                      '<div class="sf-outline-page__outline-container"><div>' + nav() + "</div></div>" +
+                      '<section class="sf-content">' + content + "</section>" +
+                      "</div></main></div></div></div></div>";
+                  }
+                  function render() {
+                    const r = route();
+                    paint('<div class="sf-skeleton" aria-busy="true">Загрузка…</div>');
+                    const api = r === "announcements" ? "/api/announcements"
+                              : r.startsWith("module/") ? "/api/" + r : null;
+                    const outlineReady = outline ? Promise.resolve() : load("/api/outline").then(o => { outline = o; });
+                    Promise.all([outlineReady, api ? load(api) : Promise.resolve(null)]).then(([, data]) => {
+                      if (route() !== r) return;
+                      if (r === "announcements") {
+                        paint('<h1>Объявления</h1><div class="sf-announce-list">' + data.items.map(a =>
+                          "<article><time>" + esc(a.date) + "</time><p>" + esc(a.text) + "</p></article>").join("") + "</div>");
+                      } else if (data) {
+                        paint("<h1>" + esc(data.title) + "</h1><ol>" + data.lessons.map(l => "<li>" + esc(l) + "</li>").join("") + "</ol>");
+                      } else {
+                        paint("<h1>" + esc(outline.title) + "</h1><p>Модулей в программе: " + outline.modules.length + "</p>");
+                      }
+                    });
+                  }
+                  document.addEventListener("click", e => {
+                    const t = e.target.closest("[data-go]");
+                    if (!t) return;
+                    e.preventDefault();
+                    go(t.dataset.go);
+                  });
+                  window.addEventListener("popstate", render);
+                  render();
+                })();
+                </script>
+                </body></html>
+                """.formatted(skeletonMs, COURSE_PATH);
+    }
+
+    /* ======================= утилиты ======================= */
+
+    private boolean authorized(HttpExchange ex) {
+        List<String> headers = ex.getRequestHeaders().get("Cookie");
+        if (headers == null) return false;
+        for (String h : headers) {
+            String sid = FetchSupport.parseCookieHeader(h).get(SESSION_COOKIE);
+            if (sid != null && sessions.contains(sid)) return true;
+        }
+        return false;
+    }
+
+    private static Map<String, String> form(String raw) {
+        Map<String, String> out = new HashMap<>();
+        if (raw == null || raw.isEmpty()) return out;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            out.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return out;
+    }
+
+    private static int parseModule(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void pause(long ms) {
+        if (ms <= 0) return;
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void redirect(HttpExchange ex, String location) throws IOException {
+        ex.getResponseHeaders().set("Location", location);
+        ex.sendResponseHeaders(302, -1);
+        ex.close();
+    }
+
+    private static void send(HttpExchange ex, int status, String type, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
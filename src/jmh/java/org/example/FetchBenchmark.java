@@ -0,0 +1,70 @@
+package org.example;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Путь /check без сети: разбор ответа jsoup + выбор контента по селектору, сводка заголовков, разбор кук.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FetchBenchmark {
+
+    @Param({"course-home.html", "lesson-algorithms.html"})
+    public String fixture;
+
+    @Param({"main", ".sf-outline-page__outline-container nav li:nth-child(3) > span"})
+    public String selector;
+
+    private String html;
+    private Map<String, String> headers;
+    private String cookieHeader;
+
+    @Setup
+    public void setup() {
+        html = Fixtures.read(fixture);
+
+        headers = new LinkedHashMap<>();
+        headers.put("content-type", "text/html; charset=utf-8");
+        headers.put("content-encoding", "gzip");
+        headers.put("cache-control", "no-cache, no-store, must-revalidate");
+        headers.put("date", "Mon, 19 Oct 2026 10:00:00 GMT");
+        headers.put("server", "nginx");
+        headers.put("strict-transport-security", "max-age=31536000; includeSubDomains; preload");
+        headers.put("content-security-policy", "default-src 'self'; script-src 'self' 'unsafe-inline' https://www.googletagmanager.com "
+                + "https://mc.yandex.ru; img-src * data:; connect-src 'self' https://apps.skillfactory.ru wss://apps.skillfactory.ru");
+        headers.put("x-frame-options", "SAMEORIGIN");
+        headers.put("x-content-type-options", "nosniff");
+        headers.put("vary", "Accept-Encoding, Cookie");
+        headers.put("set-cookie", "csrftoken=" + "a".repeat(64) + "; expires=Tue, 19 Oct 2027 10:00:00 GMT; Path=/; SameSite=Lax; Secure");
+        headers.put("x-request-id", "5f0c9a3e-2b1d-4c8e-9f7a-1e2d3c4b5a69");
+        headers.put("x-cache", "MISS");
+        headers.put("via", "1.1 varnish");
+
+        cookieHeader = "csrftoken=" + "a".repeat(64) + "; sessionid=" + "b".repeat(32)
+                + "; edx-user-info=\"{\\\"username\\\": \\\"student\\\"}\"; edxloggedin=true; _ga=GA1.2.123456789.1700000000"
+                + "; _ym_uid=1700000000123456789; _ym_d=1700000000; openedx-language-preference=ru";
+    }
+
+    @Benchmark
+    public String parseAndSelect() {
+        Document doc = Jsoup.parse(html, Fixtures.BASE_URI);
+        return FetchSupport.selectContent(doc, selector);
+    }
+
+    @Benchmark
+    public String summarizeHeaders() {
+        return FetchSupport.summarizeHeaders(headers);
+    }
+
+    @Benchmark
+    public Map<String, String> parseCookieHeader() {
+        return FetchSupport.parseCookieHeader(cookieHeader);
+    }
+}
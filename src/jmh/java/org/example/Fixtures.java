@@ -0,0 +1,29 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Страницы курса (src/jmh/resources/fixtures) — входные данные бенчмарков.
+ *
+ * Страницы синтетические: написаны вручную по образцу разметки курса (вложенность, классы, объём текста),
+ * а не сняты с живого сайта — там персональные данные учётки. Замеры на них — ориентир, а не цифры продакшена.
+ */
+final class Fixtures {
+
+    static final String BASE_URI = "https://apps.skillfactory.ru/learning/course/course-v1:skillfactory+MIFIDEV-1sem+JUN2025/home";
+
+    private Fixtures() {
+    }
+
+    static String read(String name) {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) throw new IllegalArgumentException("Нет фикстуры: " + name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
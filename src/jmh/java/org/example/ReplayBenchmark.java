@@ -0,0 +1,53 @@
+package org.example;
+
+import java.util.Locale;
+
+/**
+ * Прогон целей на записанных кассетах ({@link NetworkTape}, NETWORK_TAPE=replay): без сайта, без логина,
+ * без сетевого шума — сравнивать правки сценариев и стратегий ожидания на реальных страницах.
+ *
+ * Кассеты сначала пишет обычный бот с NETWORK_TAPE=record. Запуск: ./gradlew replayBench
+ * (WATCH_URL / TARGETS_FILE — те же, что при записи; NETWORK_TAPE_DIR — где лежат кассеты).
+ *
+ * ENV: REPLAY_BENCH_RUNS — число прогонов.
+ */
+public final class ReplayBenchmark {
+
+    private static final int RUNS = Integer.parseInt(getenvOrDefault("REPLAY_BENCH_RUNS", "5"));
+    private static final String UA = getenvOrDefault("RENDER_USER_AGENT",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120 Safari/537.36");
+
+    private ReplayBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (NetworkTape.MODE != NetworkTape.Mode.REPLAY) {
+            throw new IllegalStateException("Нужен NETWORK_TAPE=replay — запускайте через ./gradlew replayBench");
+        }
+        WatchProfile p = WatchProfile.primary();
+        WallTimes times = new WallTimes();
+        for (int run = 1; run <= RUNS; run++) {
+            // новый браузер на прогон: кеш и куки прошлого прогона не должны влиять на время
+            var driver = DriverFactory.newChrome(true, UA);
+            times.beginRun();
+            long t0 = System.nanoTime();
+            ChangeWatcher.RunResult res;
+            try {
+                res = ChangeWatcher.runChecksWithHtml(p, driver, Deadline.in(ChangeWatcher.RUN_BUDGET_MS), null);
+            } finally {
+                DriverFactory.quit(driver);
+            }
+            times.endRun();
+            times.add("весь прогон", (System.nanoTime() - t0) / 1e6);
+            System.out.printf(Locale.ROOT, "Прогон %d: %.0f мс, изменений %d, пропущено %d%n",
+                    run, times.last("весь прогон"), res.changes().size(), res.skippedTargets().size());
+            res.skippedTargets().forEach((t, why) -> System.out.println("   ⏭ " + t + ": " + why));
+        }
+        times.print(RUNS);
+    }
+
+    private static String getenvOrDefault(String key, String def) {
+        String v = System.getenv(key);
+        return (v == null || v.isBlank()) ? def : v;
+    }
+}
@@ -0,0 +1,71 @@
+package org.example;
+
+import java.util.Locale;
+
+/**
+ * Сквозной замер на локальном {@link FakeSkillFactory}: renderWithLogin + runChecksWithHtml в настоящем Chrome.
+ *
+ * Это не JMH — один прогон длится секунды, важна стена времени по целям, а не наносекунды.
+ * Запуск: ./gradlew spaBench (задача выставляет WATCH_URL / WATCH_LOGIN_URL на фейковый сервер).
+ *
+ * ENV:
+ *  - FAKE_SF_PORT — порт сервера (должен совпадать с WATCH_URL)
+ *  - FAKE_SF_LATENCY_MS / FAKE_SF_JITTER_MS — задержка ответов API
+ *  - FAKE_SF_SKELETON_MS — сколько skeleton висит после ответа
+ *  - SPA_BENCH_RUNS — число прогонов (первый — «холодный», состояние пустое)
+ */
+public final class SpaBenchmark {
+
+    private static final int PORT = Integer.parseInt(getenvOrDefault("FAKE_SF_PORT", "18080"));
+    private static final long LATENCY_MS = Long.parseLong(getenvOrDefault("FAKE_SF_LATENCY_MS", "250"));
+    private static final long JITTER_MS = Long.parseLong(getenvOrDefault("FAKE_SF_JITTER_MS", "50"));
+    private static final long SKELETON_MS = Long.parseLong(getenvOrDefault("FAKE_SF_SKELETON_MS", "300"));
+    private static final int RUNS = Integer.parseInt(getenvOrDefault("SPA_BENCH_RUNS", "3"));
+
+    private SpaBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        try (FakeSkillFactory sf = FakeSkillFactory.start(PORT, LATENCY_MS, JITTER_MS, SKELETON_MS)) {
+            WatchProfile p = WatchProfile.primary();
+            if (!p.watchUrl().startsWith(sf.baseUrl())) {
+                throw new IllegalStateException("WATCH_URL (" + p.watchUrl() + ") не указывает на " + sf.baseUrl()
+                        + " — запускайте через ./gradlew spaBench");
+            }
+            System.out.println("🧪 Фейковый SkillFactory: " + sf.homeUrl()
+                    + " (API " + LATENCY_MS + "±" + JITTER_MS + " мс, skeleton " + SKELETON_MS + " мс)");
+
+            WallTimes times = new WallTimes();
+            for (int run = 1; run <= RUNS; run++) {
+                times.beginRun();
+                long t0 = System.nanoTime();
+                BotWatcher.RenderResult rr = BotWatcher.renderWithLogin(p.watchUrl(), "", p.loginUrl(),
+                        p.username(), p.password(), "main", "#root > *", true, p.cookies());
+                long t1 = System.nanoTime();
+                ChangeWatcher.RunResult res;
+                try {
+                    res = ChangeWatcher.runChecksWithHtml(p, rr.driver,
+                            Deadline.in(ChangeWatcher.RUN_BUDGET_MS), null);
+                } finally {
+                    DriverFactory.quit(rr.driver);
+                }
+                long t2 = System.nanoTime();
+
+                times.add("логин+рендер", (t1 - t0) / 1e6);
+                times.endRun();
+                times.add("весь прогон", (t2 - t0) / 1e6);
+                System.out.printf(Locale.ROOT, "Прогон %d: логин+рендер %.0f мс, всего %.0f мс, изменений %d, пропущено %d%n",
+                        run, times.last("логин+рендер"), times.last("весь прогон"),
+                        res.changes().size(), res.skippedTargets().size());
+                res.skippedTargets().forEach((t, why) -> System.out.println("   ⏭ " + t + ": " + why));
+            }
+            times.print(RUNS);
+            System.out.println("Запросов к API: " + sf.apiCalls());
+        }
+    }
+
+    private static String getenvOrDefault(String key, String def) {
+        String v = System.getenv(key);
+        return (v == null || v.isBlank()) ? def : v;
+    }
+}
@@ -0,0 +1,73 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение/запись watch-state.json: обычное число целей и заведомо большое.
+ *
+ * Прогон пишет состояние через {@link ChangeWatcher.State#mergeAndSave}: блокировка, перечитывание файла,
+ * перенос изменённых целей, атомарная подмена — это и меряет mergeAndSave (изменились 5 целей).
+ * save — одна сериализация без слияния, для сравнения.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StateBenchmark {
+
+    private static final int TOUCHED = 5;
+
+    @Param({"5", "500", "50000"})
+    public int targets;
+
+    private File file;
+    private File mergeFile;
+    private ChangeWatcher.State state;
+    private final List<String> touched = new ArrayList<>();
+
+    @Setup
+    public void setup() throws Exception {
+        file = File.createTempFile("watch-state-bench-", ".json");
+        mergeFile = File.createTempFile("watch-state-merge-bench-", ".json");
+        state = new ChangeWatcher.State();
+        String now = Instant.now().toString();
+        for (int i = 0; i < targets; i++) {
+            String name = "Course: Java · Модуль " + i;
+            state.hashes.put(name, ChangeWatcher.sha256(name));
+            state.updatedAt.put(name, now);
+            state.recent.put(name, new ArrayList<>(List.of(ChangeWatcher.sha256(name + "-1"),
+                    ChangeWatcher.sha256(name + "-2"))));
+            if (i < TOUCHED) touched.add(name);
+        }
+        state.save(file);
+        state.save(mergeFile);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (File f : List.of(file, mergeFile, new File(mergeFile.getPath() + ".lock"))) {
+            //noinspection ResultOfMethodCallIgnored
+            f.delete();
+        }
+    }
+
+    @Benchmark
+    public ChangeWatcher.State load() {
+        return ChangeWatcher.State.load(file);
+    }
+
+    @Benchmark
+    public void mergeAndSave() {
+        state.mergeAndSave(mergeFile, touched);
+    }
+
+    @Benchmark
+    public void save() {
+        state.save(file);
+    }
+}
@@ -0,0 +1,163 @@
+package org.example;
+
+import org.telegram.telegrambots.longpolling.TelegramBotsLongPollingApplication;
+import org.telegram.telegrambots.longpolling.util.DefaultGetUpdatesGenerator;
+import org.telegram.telegrambots.meta.TelegramUrl;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Нагрузочный тест пути отправки: настоящий BotWatcher (long polling или webhook + OkHttp-клиент) против {@link FakeBotApi}.
+ *
+ * Две фазы:
+ *  1) команды — LOAD_CHATS чатов шлют по LOAD_COMMANDS_PER_CHAT раз /status, равномерно за LOAD_SPREAD_MS;
+ *     задержка команды = от постановки апдейта (в getUpdates или push на webhook) до ответного sendMessage в этот чат
+ *  2) рассылка изменений — синтетический результат /checkjs (LOAD_FANOUT_TARGETS целей с изменениями)
+ *     уходит в каждый чат через sendRunResult: сообщения + HTML-документы
+ *
+ * Запуск: ./gradlew telegramLoad (long polling) или telegramLoadWebhook (WEBHOOK_URL — апдейты пушит фейк);
+ * задачи направляют TELEGRAM_API_URL на фейковый сервер.
+ * FAKE_TG_LATENCY_MS / FAKE_TG_JITTER_MS / FAKE_TG_429_RATE / FAKE_TG_RETRY_AFTER_S — поведение сервера.
+ */
+public final class TelegramLoadTest {
+
+    private static final String TOKEN = getenvOrDefault("BOT_TOKEN", "0:load");
+    private static final String API_URL = getenvOrDefault("TELEGRAM_API_URL", "http://127.0.0.1:18081");
+    private static final int CHATS = Integer.parseInt(getenvOrDefault("LOAD_CHATS", "300"));
+    private static final int COMMANDS_PER_CHAT = Integer.parseInt(getenvOrDefault("LOAD_COMMANDS_PER_CHAT", "3"));
+    private static final long SPREAD_MS = Long.parseLong(getenvOrDefault("LOAD_SPREAD_MS", "5000"));
+    private static final int FANOUT_TARGETS = Integer.parseInt(getenvOrDefault("LOAD_FANOUT_TARGETS", "3"));
+    private static final long LATENCY_MS = Long.parseLong(getenvOrDefault("FAKE_TG_LATENCY_MS", "30"));
+    private static final long JITTER_MS = Long.parseLong(getenvOrDefault("FAKE_TG_JITTER_MS", "10"));
+    private static final double RATE_429 = Double.parseDouble(getenvOrDefault("FAKE_TG_429_RATE", "0.01"));
+    private static final int RETRY_AFTER_S = Integer.parseInt(getenvOrDefault("FAKE_TG_RETRY_AFTER_S", "1"));
+
+    private static final long CHAT_BASE = 1_000_000L;
+
+    private TelegramLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = URI.create(API_URL).getPort();
+        try (FakeBotApi api = FakeBotApi.start(port, LATENCY_MS, JITTER_MS, RATE_429, RETRY_AFTER_S)) {
+            System.out.println("🧪 Фейковый Bot API: " + api.url() + " (ответ " + LATENCY_MS + "±" + JITTER_MS
+                    + " мс, 429 с вероятностью " + RATE_429 + ", retry_after " + RETRY_AFTER_S + " с)");
+            BotWatcher bot = new BotWatcher();
+            TelegramBotsLongPollingApplication app = null;
+            if (WebhookServer.enabled()) {
+                // фейк сам POST'ит апдейты на наш эндпоинт
+                WebhookServer.start(bot::consume);
+                bot.registerWebhook();
+                System.out.println("Режим: webhook " + WebhookServer.url());
+            } else {
+                app = new TelegramBotsLongPollingApplication();
+                TelegramUrl url = new TelegramUrl("http", "127.0.0.1", port, false);
+                app.registerBot(TOKEN, () -> url, new DefaultGetUpdatesGenerator(), bot);
+                System.out.println("Режим: long polling");
+            }
+            try {
+                commands(api);
+                fanOut(api, bot);
+            } finally {
+                if (app != null) app.close();
+            }
+        }
+    }
+
+    /* ======================= фаза 1: команды ======================= */
+
+    private static void commands(FakeBotApi api) throws InterruptedException {
+        int total = CHATS * COMMANDS_PER_CHAT;
+        // чат → моменты отправки ещё не отвеченных команд (ответ на /status — ровно одно сообщение)
+        Map<Long, Deque<Long>> pending = new ConcurrentHashMap<>();
+        List<Long> latenciesNs = Collections.synchronizedList(new ArrayList<>(total));
+        CountDownLatch done = new CountDownLatch(total);
+        api.onMessage(chatId -> {
+            Deque<Long> q = pending.get(chatId);
+            Long sent = q == null ? null : q.pollFirst();
+            if (sent == null) return;
+            latenciesNs.add(System.nanoTime() - sent);
+            done.countDown();
+        });
+
+        long sendsBefore = api.calls("sendMessage");
+        long t0 = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            long chatId = CHAT_BASE + (i % CHATS);
+            // равномерно по времени: i-я команда — в момент t0 + i * SPREAD / total
+            long at = t0 + SPREAD_MS * 1_000_000L * i / total;
+            long wait = at - System.nanoTime();
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+            pending.computeIfAbsent(chatId, k -> new ConcurrentLinkedDeque<>()).addLast(System.nanoTime());
+            api.command(chatId, "/status");
+        }
+        boolean all = done.await(Math.max(60_000, SPREAD_MS * 4), TimeUnit.MILLISECONDS);
+        double seconds = (System.nanoTime() - t0) / 1e9;
+        long sends = api.calls("sendMessage") - sendsBefore;
+
+        List<Long> sorted;
+        synchronized (latenciesNs) {
+            sorted = new ArrayList<>(latenciesNs);
+        }
+        Collections.sort(sorted);
+        System.out.println();
+        System.out.printf(Locale.ROOT, "Команды: %d чатов × %d = %d за %.1f с%s%n",
+                CHATS, COMMANDS_PER_CHAT, total, seconds, all ? "" : " (ответы получены не на все: " + sorted.size() + ")");
+        System.out.printf(Locale.ROOT, "  задержка команды, мс: p50 %.0f / p99 %.0f / max %.0f%n",
+                percentileMs(sorted, 0.50), percentileMs(sorted, 0.99), percentileMs(sorted, 1.0));
+        System.out.printf(Locale.ROOT, "  sendMessage/с: %.1f, 429 всего: %d, повторов доставки на webhook: %d%n",
+                sends / seconds, api.rateLimited(), api.pushRetries());
+    }
+
+    /* ======================= фаза 2: рассылка изменений ======================= */
+
+    private static void fanOut(FakeBotApi api, BotWatcher bot) {
+        ChangeWatcher.RunResult res = syntheticResult();
+        WatchProfile p = WatchProfile.primary();
+        long messagesBefore = api.calls("sendMessage");
+        long documentsBefore = api.calls("sendDocument");
+        long limitedBefore = api.rateLimited();
+
+        long t0 = System.nanoTime();
+        for (int i = 0; i < CHATS; i++) {
+            bot.sendRunResult(CHAT_BASE + i, p, "", res);
+        }
+        double seconds = (System.nanoTime() - t0) / 1e9;
+        long messages = api.calls("sendMessage") - messagesBefore;
+        long documents = api.calls("sendDocument") - documentsBefore;
+
+        System.out.println();
+        System.out.printf(Locale.ROOT, "Рассылка: %d чатов × %d целей за %.1f с%n", CHATS, FANOUT_TARGETS, seconds);
+        System.out.printf(Locale.ROOT, "  отправок/с: %.1f (сообщений %d, документов %d), 429: %d%n",
+                (messages + documents) / seconds, messages, documents, api.rateLimited() - limitedBefore);
+    }
+
+    private static ChangeWatcher.RunResult syntheticResult() {
+        List<ChangeWatcher.Change> changes = new ArrayList<>();
+        Map<String, String> html = new LinkedHashMap<>();
+        for (int i = 1; i <= FANOUT_TARGETS; i++) {
+            String name = "Load: target " + i;
+            String text = ("Модуль " + i + ": обновлён урок. ").repeat(40);
+            String page = "<main><h1>Модуль " + i + "</h1><p>" + text + "</p></main>";
+            changes.add(new ChangeWatcher.Change(name, "0".repeat(64), "f".repeat(64), text, page));
+            html.put(name, page);
+        }
+        return new ChangeWatcher.RunResult(changes, html, Map.of(), Map.of(), Map.of());
+    }
+
+    private static double percentileMs(List<Long> sortedNs, double q) {
+        if (sortedNs.isEmpty()) return Double.NaN;
+        int i = (int) Math.ceil(q * sortedNs.size()) - 1;
+        return sortedNs.get(Math.max(0, Math.min(i, sortedNs.size() - 1))) / 1e6;
+    }
+
+    private static String getenvOrDefault(String key, String def) {
+        String v = System.getenv(key);
+        return (v == null || v.isBlank()) ? def : v;
+    }
+}
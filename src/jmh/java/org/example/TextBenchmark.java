@@ -0,0 +1,46 @@
+package org.example;
+
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Нормализация видимого текста и хэш снимка — то, что ChangeWatcher делает на каждый SNAP,
+ * и хэш HTML в /check (FetchSupport).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TextBenchmark {
+
+    @Param({"course-home.html", "lesson-algorithms.html"})
+    public String fixture;
+
+    private String html;
+    private String rawText;
+    private String normalizedText;
+
+    @Setup
+    public void setup() {
+        html = Fixtures.read(fixture);
+        // как innerText: переносы, табы, nbsp — всё, что normalize() должен схлопнуть
+        rawText = Jsoup.parse(html, Fixtures.BASE_URI).body().wholeText();
+        normalizedText = ChangeWatcher.normalize(rawText);
+    }
+
+    @Benchmark
+    public String normalize() {
+        return ChangeWatcher.normalize(rawText);
+    }
+
+    @Benchmark
+    public String sha256ChangeWatcher() throws Exception {
+        return ChangeWatcher.sha256(normalizedText);
+    }
+
+    @Benchmark
+    public String sha256FetchSupport() throws Exception {
+        return FetchSupport.sha256(html);
+    }
+}
@@ -0,0 +1,55 @@
+package org.example;
+
+import java.util.*;
+
+/**
+ * Стена времени по прогонам для сквозных бенчмарков: по целям — из гистограммы watcher_target_seconds,
+ * прочие строки (логин, весь прогон) — вручную через {@link #add}.
+ */
+final class WallTimes {
+
+    private static final String TARGET_METRIC = "watcher_target_seconds";
+
+    // строка отчёта → время каждого прогона, мс
+    private final Map<String, List<Double>> rows = new LinkedHashMap<>();
+    private Map<String, double[]> before = Map.of();
+
+    /**
+     * Запомнить гистограмму целей перед прогоном.
+     */
+    void beginRun() {
+        before = Metrics.totals(TARGET_METRIC);
+    }
+
+    /**
+     * Разница гистограммы с начала прогона → время каждой проверенной цели.
+     */
+    void endRun() {
+        for (Map.Entry<String, double[]> e : Metrics.totals(TARGET_METRIC).entrySet()) {
+            double[] was = before.getOrDefault(e.getKey(), new double[2]);
+            if (e.getValue()[0] > was[0]) {
+                // ключ — метки Prometheus вида {target="..."}
+                String target = e.getKey().replaceAll("^\\{target=\"(.*)\"}$", "$1");
+                add(target, (e.getValue()[1] - was[1]) * 1000);
+            }
+        }
+    }
+
+    void add(String row, double ms) {
+        rows.computeIfAbsent(row, k -> new ArrayList<>()).add(ms);
+    }
+
+    double last(String row) {
+        List<Double> ms = rows.get(row);
+        return ms == null || ms.isEmpty() ? 0 : ms.get(ms.size() - 1);
+    }
+
+    void print(int runs) {
+        System.out.println();
+        System.out.println("Стена времени, мс (мин / сред / макс), прогонов: " + runs);
+        rows.forEach((name, ms) -> {
+            DoubleSummaryStatistics s = ms.stream().mapToDouble(Double::doubleValue).summaryStatistics();
+            System.out.printf(Locale.ROOT, "  %-60s %8.0f %8.0f %8.0f%n", name, s.getMin(), s.getAverage(), s.getMax());
+        });
+    }
+}
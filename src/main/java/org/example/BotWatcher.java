@@ -6,18 +6,23 @@ import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 
 import org.telegram.telegrambots.longpolling.TelegramBotsLongPollingApplication;
+import org.telegram.telegrambots.longpolling.util.DefaultGetUpdatesGenerator;
 import org.telegram.telegrambots.longpolling.util.LongPollingSingleThreadUpdateConsumer;
 
+import org.telegram.telegrambots.meta.TelegramUrl;
+
 import org.telegram.telegrambots.meta.generics.TelegramClient;
 import org.telegram.telegrambots.client.okhttp.OkHttpTelegramClient;
 
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
+import org.telegram.telegrambots.meta.api.methods.updates.DeleteWebhook;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
 
-import io.github.bonigarcia.wdm.WebDriverManager;
 import org.openqa.selenium.*;
 import org.openqa.selenium.chrome.ChromeDriver;
 import org.openqa.selenium.chrome.ChromeOptions;
@@ -28,12 +33,9 @@ import java.io.*;
 import java.net.URI;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 public class BotWatcher implements LongPollingSingleThreadUpdateConsumer {
 
@@ -45,12 +47,23 @@ public class BotWatcher implements LongPollingSingleThreadUpdateConsumer {
     private static final String RENDER_UA      = getenvOrDefault("RENDER_USER_AGENT",
             "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120 Safari/537.36");
     private static final String WATCH_WAIT_SELECTOR = getenvOrDefault("WATCH_WAIT_SELECTOR", "#root > *");
-    private static final String WATCH_USERNAME = getenvOrDefault("WATCH_USERNAME", "");
-    private static final String WATCH_PASSWORD = getenvOrDefault("WATCH_PASSWORD", "");
-    private static final String WATCH_LOGIN_URL = getenvOrDefault("WATCH_LOGIN_URL", "");
-
-    // держим последнее окно браузера открытым (чтобы GC не прибил)
-    private static volatile org.openqa.selenium.WebDriver LAST_DRIVER;
+    private static final String ADMIN_CHAT_ID  = getenvOrDefault("ADMIN_CHAT_ID", ""); // куда слать служебные алерты
+
+    // получать апдейты (long polling / webhook) — только в ОДНОМ процессе на BOT_TOKEN (иначе 409 Conflict);
+    // остальные воркеры (WORKER_SHARED_DIR) ставят false: прогоны им передаются через общую папку
+    private static final boolean BOT_RECEIVE_UPDATES =
+            Boolean.parseBoolean(getenvOrDefault("BOT_RECEIVE_UPDATES", "true"));
+
+    // Bot API: пусто — api.telegram.org; иначе свой адрес (локальный Bot API server, фейк для нагрузочного теста)
+    private static final TelegramUrl TELEGRAM_URL = telegramUrl(getenvOrDefault("TELEGRAM_API_URL", ""));
+    // сколько раз повторять вызов после 429 Too Many Requests (с паузой retry_after)
+    private static final int TELEGRAM_MAX_RETRIES =
+            Integer.parseInt(getenvOrDefault("TELEGRAM_MAX_RETRIES", "3"));
+    // сколько всего можно проспать на 429 в потоке апдейтов: пока он спит, бот не отвечает ни одному чату
+    private static final long TELEGRAM_INLINE_RETRY_MAX_MS =
+            Long.parseLong(getenvOrDefault("TELEGRAM_INLINE_RETRY_MAX_MS", "5000"));
+    // поток, в котором вызывается consume (long polling — один на весь бот, webhook — полоса чатов)
+    private static final ThreadLocal<Boolean> UPDATES_THREAD = ThreadLocal.withInitial(() -> false);
 
      private static final long WAIT_AFTER_LOGIN_MS =
             Long.parseLong(getenvOrDefault("WAIT_AFTER_LOGIN_MS", "6000"));       // пауза после логина
@@ -67,25 +80,157 @@ public class BotWatcher implements LongPollingSingleThreadUpdateConsumer {
     private static final boolean RENDER_HEADLESS =
             Boolean.parseBoolean(getenvOrDefault("RENDER_HEADLESS", "false"));
 
-    private static volatile org.openqa.selenium.WebDriver CURRENT_DRIVER;
+    // период фоновой проверки живости браузера/сессии (0 — выключено)
+    private static final long SESSION_HEALTH_INTERVAL_MS =
+            Long.parseLong(getenvOrDefault("SESSION_HEALTH_INTERVAL_MS", "300000"));
+
+    // куки авторизованной сессии на диске: после рестарта логин по паролю не нужен, пока они живы
+    private static final boolean PERSIST_COOKIES =
+            Boolean.parseBoolean(getenvOrDefault("PERSIST_COOKIES", "true"));
+
+    // дайджест: результаты /checkjs одним сообщением + одним ZIP (HTML, скриншоты, диффы, состояние) вместо файлов по целям
+    private static final boolean DIGEST_MODE =
+            Boolean.parseBoolean(getenvOrDefault("DIGEST_MODE", "false"));
+
+    // окно слияния дайджеста: изменения, найденные за это время, уходят одним архивом (0 — по окончании /checkjs)
+    private static final long DIGEST_WINDOW_MS =
+            Long.parseLong(getenvOrDefault("DIGEST_WINDOW_MS", "0"));
+
+    // результаты целей, ждущие отправки в чат (каждый держит HTML и скриншот); очередь полна — прогон отправляет сам
+    private static final int SEND_QUEUE =
+            Math.max(1, Integer.parseInt(getenvOrDefault("SEND_QUEUE", "8")));
+
+    // сколько ждать дослать результаты целей после прогона
+    private static final long SEND_DRAIN_MS =
+            Long.parseLong(getenvOrDefault("SEND_DRAIN_MS", "600000"));
+
+    // профили наблюдения (PROFILES_FILE или один профиль из ENV); у каждого — своя тёплая сессия Chrome
+    private static final List<WatchProfile> PROFILES = WatchProfile.all();
+    private static final Map<String, BrowserSession> SESSIONS = new LinkedHashMap<>();
+
+    static {
+        // сессия продлевается сервером: свежие куки сохраняем и после прогонов/проверок, не только после логина
+        for (WatchProfile p : PROFILES) {
+            SESSIONS.put(p.id(), new BrowserSession(() -> loginForSession(p), d -> {
+                if (PERSIST_COOKIES) p.cookies().save(d);
+            }));
+        }
+    }
+
+    // /checkjs по нескольким профилям: каждый в своём потоке, браузеры раздаёт BrowserCapacity
+    private static final java.util.concurrent.ExecutorService CHECK_POOL =
+            java.util.concurrent.Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "profile-check");
+                t.setDaemon(true);
+                return t;
+            });
+
+
+    private static final java.util.concurrent.ScheduledExecutorService DIGEST_TIMER =
+            java.util.concurrent.Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "digest");
+                t.setDaemon(true);
+                return t;
+            });
 
+    // открытые дайджесты по чатам (DIGEST_MODE)
+    private final Map<Long, Digest> digests = new HashMap<>();
 
     // ЕДИНСТВЕННЫЙ клиент Telegram
-    private final TelegramClient client = new OkHttpTelegramClient(BOT_TOKEN);
+    private final TelegramClient client = new OkHttpTelegramClient(BOT_TOKEN, TELEGRAM_URL);
 
     // кэш последнего HTML (нерендеренного), чтобы не терять прошлую логику
     private volatile FetchResult lastFetch;
 
     public static void main(String[] args) throws Exception {
+        BotWatcher bot = new BotWatcher();
+        if (WorkerLeases.enabled()) {
+            // /checkjs, полученный другим процессом: проверить свои цели и ответить в тот же чат
+            WorkerLeases.INSTANCE.watchRuns(req -> {
+                try {
+                    bot.runProfiles(req.chatId(), profilesByIds(req.profileIds()));
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    bot.send(req.chatId(), "[" + WorkerLeases.INSTANCE.id() + "] ⚠️ Ошибка: " + safe(e));
+                }
+            });
+        }
+        if (!BOT_RECEIVE_UPDATES) {
+            if (!WorkerLeases.enabled()) {
+                throw new IllegalStateException("BOT_RECEIVE_UPDATES=false имеет смысл только с WORKER_SHARED_DIR");
+            }
+            System.out.println("✅ Worker started (апдейты бота получает другой процесс). URL=" + WATCH_URL);
+            startServices();
+            Thread.currentThread().join();
+            return;
+        }
+        if (WebhookServer.enabled()) {
+            // апдейты приходят к нам сами; обработка — асинхронно в полосах WebhookServer
+            WebhookServer.start(bot::consume);
+            bot.registerWebhook();
+            System.out.println("✅ Bot started (webhook " + WebhookServer.url() + "). URL=" + WATCH_URL);
+            startServices();
+            Thread.currentThread().join();
+            return;
+        }
         try (TelegramBotsLongPollingApplication app = new TelegramBotsLongPollingApplication()) {
-            app.registerBot(BOT_TOKEN, new BotWatcher());
+            // после webhook-режима getUpdates отвечает 409, пока webhook не снят
+            bot.dropWebhook();
+            app.registerBot(BOT_TOKEN, () -> TELEGRAM_URL, new DefaultGetUpdatesGenerator(), bot);
             System.out.println("✅ Bot started. URL=" + WATCH_URL + ", cookies=" + (!WATCH_COOKIES.isBlank()));
+            startServices();
             Thread.currentThread().join();
         }
     }
 
+    /**
+     * Всё, что не зависит от способа получения апдейтов: метрики, воркеры, chromedriver, прогрев браузеров.
+     */
+    private static void startServices() {
+        BrowserWatchdog.installShutdownHook();
+        Metrics.startServer();
+        if (WorkerLeases.enabled()) {
+            // несколько процессов бота делят цели через общую папку
+            WorkerLeases.INSTANCE.start();
+            System.out.println("👷 Worker " + WorkerLeases.INSTANCE.id() + ", shared dir " + WorkerLeases.INSTANCE.dir());
+        }
+        try {
+            // chromedriver — один раз при старте, а не на каждый новый драйвер
+            if (!DriverFactory.usesGrid()) DriverFactory.resolve();
+        } catch (Exception e) {
+            System.err.println("chromedriver не разрешён при старте: " + e.getMessage());
+        }
+        for (WatchProfile p : PROFILES) {
+            if (!p.canLogin()) continue;
+            // логинимся заранее, чтобы первый /checkjs не платил за логин (если браузеры держим открытыми)
+            if (keepBrowsers()) session(p).prewarm();
+            session(p).startHealthChecks(SESSION_HEALTH_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * Зарегистрировать WEBHOOK_URL в Bot API (с секретом и, для самоподписанного, сертификатом).
+     */
+    void registerWebhook() throws TelegramApiException {
+        SetWebhook.SetWebhookBuilder b = SetWebhook.builder().url(WebhookServer.url())
+                .secretToken(WebhookServer.secret());
+        File cert = WebhookServer.certificate();
+        if (cert != null) b.certificate(new InputFile(cert, cert.getName()));
+        SetWebhook sw = b.build();
+        withRetryAfter(() -> client.execute(sw));
+    }
+
+    void dropWebhook() {
+        try {
+            withRetryAfter(() -> client.execute(DeleteWebhook.builder().build()));
+        } catch (TelegramApiException e) {
+            System.err.println("deleteWebhook не удался: " + safe(e));
+        }
+    }
+
     @Override
     public void consume(Update u) {
+        UPDATES_THREAD.set(true);
         if (u == null || !u.hasMessage() || !u.getMessage().hasText()) return;
         long chatId = u.getMessage().getChatId();
         String text = u.getMessage().getText().trim();
@@ -102,6 +247,11 @@ public class BotWatcher implements LongPollingSingleThreadUpdateConsumer {
                         /open N  — скачать iframe N (без JS)
                         /render  — РЕНДЕР через Chrome: прислать rendered.html + rendered.png (только страница логина)
                         /checkjs — ПРОЙТИ таргеты с логином (Selenium) и прислать изменения (все поддерживаемые модули)
+                        /checkjs ID — то же только для профиля ID
+                        /history — сколько раз и когда менялись цели
+                        /history ЦЕЛЬ [N] — последние N изменений цели (по части имени)
+                        /metrics — тайминги шагов/целей/логина/Telegram и счётчики
+                        /jfr start|stop — JFR-запись (только админ)
                         """);
                 return;
             }
@@ -111,9 +261,11 @@ public class BotWatcher implements LongPollingSingleThreadUpdateConsumer {
                         🌐 URL: %s
                         Cookies заданы: %s
                         Селектор: %s
+                        Профили: %s (браузеров одновременно: %d)
                         Время: %s
                         """.formatted(WATCH_URL, WATCH_COOKIES.isBlank() ? "нет" : "да",
                         WATCH_SELECTOR.isBlank() ? "(вся страница)" : WATCH_SELECTOR,
+                        PROFILES.stream().map(WatchProfile::id).toList(), BrowserCapacity.capacity(),
                         Instant.now()));
 
                 case "check" -> {
@@ -177,12 +329,16 @@ public class BotWatcher implements LongPollingSingleThreadUpdateConsumer {
                 }
 
                 case "render" -> {
-                    if (WATCH_USERNAME.isBlank() || WATCH_PASSWORD.isBlank()) {
+                    WatchProfile p = WatchProfile.primary();
+                    if (p.username().isBlank() || p.password().isBlank()) {
                         send(chatId, "⚠️ Для /render с логином задайте WATCH_USERNAME и WATCH_PASSWORD в ENV.");
                         break;
                     }
-                    RenderResult rr = renderWithLogin(WATCH_URL, WATCH_COOKIES, WATCH_LOGIN_URL,
-                            WATCH_USERNAME, WATCH_PASSWORD, WATCH_SELECTOR, WATCH_WAIT_SELECTOR);
+                    RenderResult rr = BrowserCapacity.withSlot("/render", () -> renderWithLogin(p.watchUrl(),
+                            WATCH_COOKIES, p.loginUrl(), p.username(), p.password(), WATCH_SELECTOR,
+                            WATCH_WAIT_SELECTOR, keepBrowsers(), p.cookies()));
+                    // свежий авторизованный браузер — пусть его и использует /checkjs
+                    if (keepBrowsers()) session(p).adopt(rr.driver);
                     if (rr.htmlFile != null) {
                         sendFile(chatId, rr.htmlFile, "rendered.html", "Рендер после логина (HTML)");
                         //noinspection ResultOfMethodCallIgnored
@@ -197,93 +353,39 @@ public class BotWatcher implements LongPollingSingleThreadUpdateConsumer {
                             (rr.selectorMatched ? ", selector OK" : ", selector NOT FOUND"));
                 }
                 case "checkjs" -> {
-                    // 1) гарантируем, что есть живой авторизованный Chrome
-                    WebDriver d = ensureLoggedInDriver();
-
-                    // 2) прогон таргетов
-                    ChangeWatcher.RunResult res = ChangeWatcher.runChecksWithHtml(d);
-                    List<ChangeWatcher.Change> changes = res.changes();
-                    Map<String, String> htmlByTarget = res.htmlByTarget();
-                    Map<String, File> screenshotsByTarget = res.screenshotByTarget();
-
-                    // Множество имён таргетов, где были изменения
-                    Set<String> changedNames = new HashSet<>();
-                    for (ChangeWatcher.Change c : changes) {
-                        changedNames.add(c.name());
+                    String id = argument(text);
+                    if (id.isEmpty()) {
+                        checkProfiles(chatId, PROFILES);
+                    } else {
+                        WatchProfile p = WatchProfile.byId(id);
+                        if (p == null) send(chatId, "Нет профиля «" + id + "». Есть: " + SESSIONS.keySet());
+                        else checkProfiles(chatId, List.of(p));
                     }
-
-                    // 3) Для каждого таргета шлём статус + html + скрин
-                    for (Map.Entry<String, String> e : htmlByTarget.entrySet()) {
-                        String targetName = e.getKey();
-                        String html = e.getValue();
-                        File screenshot = screenshotsByTarget.get(targetName);
-
-                        boolean changed = changedNames.contains(targetName);
-                        String statusMsg = changed
-                                ? "🔔 Изменения в цели: " + targetName
-                                : "✓ Без изменений: " + targetName;
-                        send(chatId, statusMsg);
-
-                        // Если есть Change-объект — шлём краткое summary
-                        for (ChangeWatcher.Change c : changes) {
-                            if (c.name().equals(targetName)) {
-                                send(chatId, c.summary());
+                }
+                case "history" -> send(chatId, history(argument(text)));
+                case "metrics" -> send(chatId, Metrics.summary());
+                case "jfr" -> {
+                    if (!isAdmin(chatId)) {
+                        send(chatId, "⛔ /jfr — только для ADMIN_CHAT_ID.");
+                        break;
+                    }
+                    switch (argument(text).toLowerCase(Locale.ROOT)) {
+                        case "start" -> send(chatId, JfrEvents.start()
+                                ? "⏺ JFR-запись начата. Остановить и получить файл: /jfr stop"
+                                : "JFR-запись уже идёт.");
+                        case "stop" -> {
+                            File jfr = JfrEvents.stop();
+                            if (jfr == null) {
+                                send(chatId, "JFR-запись не идёт. Начать: /jfr start");
                                 break;
                             }
+                            sendFile(chatId, jfr, "watcher.jfr", "JFR: " + JfrEvents.describe(jfr)
+                                    + "\nОткрыть: JDK Mission Control или `jfr print --categories Watcher`");
+                            //noinspection ResultOfMethodCallIgnored
+                            jfr.delete();
                         }
-
-                        // HTML-фрагмент
-                        if (html != null && !html.isBlank()) {
-                            try {
-                                File f = writeTemp(
-                                        "checkjs-" + safeFileName(targetName) + "-",
-                                        ".html",
-                                        html
-                                );
-                                sendFile(
-                                        chatId,
-                                        f,
-                                        "checkjs-" + safeFileName(targetName) + ".html",
-                                        "JS-rendered HTML для цели: " + targetName
-                                );
-                                //noinspection ResultOfMethodCallIgnored
-                                f.delete();
-                            } catch (Exception e1) {
-                                e1.printStackTrace();
-                                send(chatId, "Не удалось отправить HTML для " + targetName + ": " + safe(e1));
-                            }
-                        }
-
-                        // PNG-скриншот
-                        if (screenshot != null && screenshot.exists()) {
-                            try {
-                                sendFile(
-                                        chatId,
-                                        screenshot,
-                                        "checkjs-" + safeFileName(targetName) + ".png",
-                                        "Скриншот для цели: " + targetName
-                                );
-                                // Можно удалить temp-файл
-                                //noinspection ResultOfMethodCallIgnored
-                                screenshot.delete();
-                            } catch (Exception e2) {
-                                e2.printStackTrace();
-                                send(chatId, "Не удалось отправить скриншот для " + targetName + ": " + safe(e2));
-                            }
-                        }
-                    }
-
-
-                    // 4) Отправляем JSON с состоянием (watch-state.json)
-                    try {
-                        File stateFile = new File(System.getProperty("user.dir"), "watch-state.json");
-                        if (stateFile.exists()) {
-                            sendFile(chatId, stateFile, "watch-state.json",
-                                    "Текущее состояние хэшей по всем целям");
-                        }
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        send(chatId, "Не удалось отправить watch-state.json: " + safe(e));
+                        default -> send(chatId, "Использование: /jfr start | /jfr stop (сейчас "
+                                + (JfrEvents.recording() ? "пишем" : "не пишем") + ")");
                     }
                 }
                 case "info" -> {
@@ -293,7 +395,7 @@ public class BotWatcher implements LongPollingSingleThreadUpdateConsumer {
                     );
                 }
 
-                default -> send(chatId, "Команды: /status /check /why /html /iframes /open N /render /checkjs  /info");
+                default -> send(chatId, "Команды: /status /check /why /html /iframes /open N /render /checkjs /history /metrics /info");
             }
 
         } catch (Exception e) {
@@ -302,6 +404,379 @@ public class BotWatcher implements LongPollingSingleThreadUpdateConsumer {
         }
     }
 
+    /* ================== /checkjs по профилям ================== */
+
+    /**
+     * Один профиль — прямо в потоке бота; несколько — параллельно, каждый ждёт свой слот браузера.
+     */
+    private void checkProfiles(long chatId, List<WatchProfile> profiles) throws Exception {
+        // остальные воркеры апдейтов не получают — передаём им прогон, свои цели они проверят сами
+        if (WorkerLeases.enabled()) WorkerLeases.INSTANCE.publishRun(chatId, profiles.stream().map(WatchProfile::id).toList());
+        runProfiles(chatId, profiles);
+    }
+
+    /**
+     * Прогон профилей в этом процессе (при шардировании — только целей, чей lease у нас).
+     */
+    private void runProfiles(long chatId, List<WatchProfile> profiles) throws Exception {
+        try {
+            runEach(chatId, profiles);
+        } finally {
+            // без окна дайджест закрывается вместе с командой
+            if (DIGEST_MODE && DIGEST_WINDOW_MS <= 0) flushDigest(chatId);
+        }
+    }
+
+    private static List<WatchProfile> profilesByIds(List<String> ids) {
+        List<WatchProfile> out = new ArrayList<>();
+        for (String id : ids) {
+            WatchProfile p = WatchProfile.byId(id);
+            if (p != null) out.add(p);
+        }
+        return out;
+    }
+
+    private void runEach(long chatId, List<WatchProfile> profiles) throws Exception {
+        if (profiles.size() == 1) {
+            checkProfile(chatId, profiles.get(0));
+            return;
+        }
+        List<java.util.concurrent.Future<?>> running = new ArrayList<>();
+        for (WatchProfile p : profiles) {
+            running.add(CHECK_POOL.submit(() -> {
+                try {
+                    checkProfile(chatId, p);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    send(chatId, "[" + p.id() + "] ⚠️ Ошибка: " + safe(e));
+                }
+            }));
+        }
+        for (java.util.concurrent.Future<?> f : running) f.get();
+    }
+
+    private void checkProfile(long chatId, WatchProfile p) throws Exception {
+        String tag = PROFILES.size() > 1 ? "[" + p.id() + "] " : "";
+        if (!p.canLogin()) {
+            throw new IllegalStateException(tag + "Для авторизации нужны WATCH_LOGIN_URL / WATCH_USERNAME / WATCH_PASSWORD.");
+        }
+        BrowserSession session = session(p);
+        if (DIGEST_MODE) {
+            checkProfileDigest(chatId, p, tag, session);
+            return;
+        }
+
+        // результат цели уходит в чат сразу после её SNAP — отдельным потоком, чтобы отправка
+        // не задерживала следующую цель; порядок сообщений сохраняется, пока очередь не переполнена.
+        // Telegram медленнее браузера (429) — тогда цель отправляет сам прогон, и результаты не копятся в памяти
+        java.util.concurrent.ThreadPoolExecutor sender = new java.util.concurrent.ThreadPoolExecutor(1, 1,
+                0, java.util.concurrent.TimeUnit.MILLISECONDS, new java.util.concurrent.ArrayBlockingQueue<>(SEND_QUEUE),
+                r -> {
+                    Thread t = new Thread(r, "send-" + p.id());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy());
+        ChangeWatcher.RunResult res;
+        try {
+            res = runWithSession(p, session, tr -> sender.execute(() -> sendTargetResult(chatId, tag, tr)));
+        } finally {
+            // дождаться отправки уже готовых целей (в том числе если прогон упал)
+            sender.shutdown();
+            if (!sender.awaitTermination(SEND_DRAIN_MS, java.util.concurrent.TimeUnit.MILLISECONDS)) {
+                int lost = sender.shutdownNow().size();
+                System.err.println(tag + "Отправка результатов целей не уложилась в " + SEND_DRAIN_MS + " мс, не отправлено: " + lost);
+                send(chatId, tag + "⚠️ Не все результаты целей успели уйти в чат (не отправлено: " + lost
+                        + "). Итог ниже может быть неполным.");
+            }
+        }
+        sendRunSummary(chatId, p, tag, res);
+    }
+
+    /**
+     * Прогон профиля в режиме дайджеста: результаты целей копятся в дайджесте чата, в чат сразу — только алерты.
+     */
+    private void checkProfileDigest(long chatId, WatchProfile p, String tag, BrowserSession session) throws Exception {
+        ChangeWatcher.RunResult res = runWithSession(p, session, tr -> {
+            synchronized (digests) {
+                digest(chatId).add(tag, tr);
+            }
+        });
+        synchronized (digests) {
+            digest(chatId).addRun(p, tag, res);
+        }
+        notifyBroken(chatId, p, tag, res);
+    }
+
+    /**
+     * Прогон целей профиля в его тёплой сессии, под слотом браузера.
+     * Без KEEP_BROWSER_OPEN Chrome закрывается и когда прогон упал (дедлайн, логин), иначе процесс утекает.
+     */
+    private static ChangeWatcher.RunResult runWithSession(WatchProfile p, BrowserSession session,
+                                                          ChangeWatcher.TargetListener listener) throws Exception {
+        return BrowserCapacity.withSlot("Профиль " + p.id(), () -> {
+            // 0) общий бюджет времени прогона — с момента, когда профилю достался браузер, включая логин
+            Deadline deadline = Deadline.in(ChangeWatcher.RUN_BUDGET_MS);
+            boolean ok = false;
+            try {
+                // 1) живой авторизованный Chrome (проверка + перелогин внутри сессии);
+                // 2) прогон таргетов; если сессия истечёт посреди цели — перелогин и повтор этой цели
+                ChangeWatcher.RunResult r = session.use(d ->
+                        ChangeWatcher.runChecksWithHtml(p, d, deadline, session::relogin, listener));
+                ok = true;
+                return r;
+            } finally {
+                if (!keepBrowsers()) session.close();
+                else if (ok) session.recycleIfNeeded(); // между прогонами: не распух ли Chrome
+            }
+        });
+    }
+
+    /**
+     * Открытый дайджест чата; первый результат в окне запускает таймер отправки.
+     * Вызывать под synchronized (digests) вместе с добавлением в дайджест: иначе {@link #flushDigest}
+     * может забрать его между get и add, и результат не уйдёт в чат, а скриншот останется на диске.
+     */
+    private Digest digest(long chatId) {
+        Digest d = digests.get(chatId);
+        if (d == null) {
+            d = new Digest();
+            digests.put(chatId, d);
+            if (DIGEST_WINDOW_MS > 0) {
+                DIGEST_TIMER.schedule(() -> flushDigest(chatId), DIGEST_WINDOW_MS,
+                        java.util.concurrent.TimeUnit.MILLISECONDS);
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Закрыть дайджест чата: сводка одним сообщением, затем архив (если есть изменения).
+     */
+    private void flushDigest(long chatId) {
+        Digest d;
+        synchronized (digests) {
+            d = digests.remove(chatId);
+        }
+        if (d == null) return;
+        try {
+            send(chatId, d.summary());
+            if (d.hasChanges()) {
+                sendZip(chatId, d.fileName(), "Дайджест: HTML, скриншоты, диффы и состояние", d::writeZip);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            send(chatId, "Не удалось отправить дайджест: " + safe(e));
+        } finally {
+            d.cleanup();
+        }
+    }
+
+    /**
+     * Результаты накопленного прогона профиля в чат: по каждой цели — как {@link #sendTargetResult},
+     * затем сводка {@link #sendRunSummary}.
+     */
+    void sendRunResult(long chatId, WatchProfile p, String tag, ChangeWatcher.RunResult res) {
+        Map<String, ChangeWatcher.Change> byName = new HashMap<>();
+        for (ChangeWatcher.Change c : res.changes()) byName.put(c.name(), c);
+        for (Map.Entry<String, String> e : res.htmlByTarget().entrySet()) {
+            sendTargetResult(chatId, tag, new ChangeWatcher.TargetResult(e.getKey(), byName.get(e.getKey()),
+                    e.getValue(), res.screenshotByTarget().get(e.getKey()), null));
+        }
+        sendRunSummary(chatId, p, tag, res);
+    }
+
+    /**
+     * Одна цель: статус, summary изменения, HTML-фрагмент и скриншот (временные файлы удаляются).
+     */
+    private void sendTargetResult(long chatId, String tag, ChangeWatcher.TargetResult r) {
+        String targetName = r.name();
+        String html = r.html();
+        File screenshot = r.screenshot();
+
+        send(chatId, r.changed()
+                ? tag + "🔔 Изменения в цели: " + targetName
+                : tag + "✓ Без изменений: " + targetName);
+        if (r.changed()) send(chatId, r.change().summary());
+
+        // HTML-фрагмент
+        if (html != null && !html.isBlank()) {
+            try {
+                File f = writeTemp(
+                        "checkjs-" + safeFileName(targetName) + "-",
+                        ".html",
+                        html
+                );
+                sendFile(
+                        chatId,
+                        f,
+                        "checkjs-" + safeFileName(targetName) + ".html",
+                        "JS-rendered HTML для цели: " + targetName
+                );
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+            } catch (Exception e1) {
+                e1.printStackTrace();
+                send(chatId, "Не удалось отправить HTML для " + targetName + ": " + safe(e1));
+            }
+        }
+
+        // PNG-скриншот
+        if (screenshot != null && screenshot.exists()) {
+            try {
+                sendFile(
+                        chatId,
+                        screenshot,
+                        "checkjs-" + safeFileName(targetName) + ".png",
+                        "Скриншот для цели: " + targetName
+                );
+            } catch (Exception e2) {
+                e2.printStackTrace();
+                send(chatId, "Не удалось отправить скриншот для " + targetName + ": " + safe(e2));
+            } finally {
+                //noinspection ResultOfMethodCallIgnored
+                screenshot.delete();
+            }
+        }
+    }
+
+    /**
+     * Итог прогона: пропущенные цели, алерт о разомкнутых breaker'ах, файл состояния.
+     */
+    private void sendRunSummary(long chatId, WatchProfile p, String tag, ChangeWatcher.RunResult res) {
+        // 3.1) Пропущенные цели (breaker разомкнут / не хватило бюджета времени)
+        if (!res.skippedTargets().isEmpty()) {
+            StringBuilder sb = new StringBuilder(tag + "⏸ Пропущены цели:\n");
+            res.skippedTargets().forEach((name, reason) ->
+                    sb.append("• ").append(name).append(" — ").append(reason).append("\n"));
+            send(chatId, sb.toString());
+        }
+
+        // 3.2) Breaker только что разомкнулся — один раз сообщаем админу
+        notifyBroken(chatId, p, tag, res);
+
+        // 4) Отправляем JSON с состоянием (watch-state.json профиля)
+        File stateFile = p.stateFile();
+        try {
+            if (stateFile.exists()) {
+                sendFile(chatId, stateFile, stateFile.getName(),
+                        tag + "Текущее состояние хэшей по всем целям");
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            send(chatId, "Не удалось отправить " + stateFile.getName() + ": " + safe(e));
+        }
+    }
+
+    private void notifyBroken(long chatId, WatchProfile p, String tag, ChangeWatcher.RunResult res) {
+        for (Map.Entry<String, String> e : res.brokenTargets().entrySet()) {
+            notifyAdmin(chatId, tag + "🚧 Цель отключена после " + p.breakers().failures(e.getKey())
+                    + " падений подряд: " + e.getKey() + "\n"
+                    + "Последняя ошибка: " + first(e.getValue(), 500) + "\n"
+                    + "Повторные попытки — с экспоненциальной паузой.");
+        }
+    }
+
+    /* ================== /history ================== */
+
+    private static final java.time.format.DateTimeFormatter HISTORY_TIME =
+            java.time.format.DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm").withZone(java.time.ZoneId.systemDefault());
+
+    // лимит Telegram — 4096 символов на сообщение, с запасом под хвост «… и ещё N»
+    private static final int HISTORY_MAX_CHARS = 4000;
+
+    /**
+     * Без аргумента — сводка по всем целям; «ЦЕЛЬ [N]» — последние N изменений цели.
+     * Всё из индексов истории, журнал целиком не читается. Ответ — одно сообщение, длинные списки обрезаются.
+     */
+    private static String history(String arg) {
+        if (arg.isBlank()) {
+            List<String> lines = new ArrayList<>();
+            for (WatchProfile p : PROFILES) {
+                String tag = PROFILES.size() > 1 ? "[" + p.id() + "] " : "";
+                for (ChangeWatcher.Target t : p.targets()) {
+                    long last = p.history().lastAt(t.name());
+                    lines.add("• " + tag + t.name() + " — " + p.history().count(t.name())
+                            + (last < 0 ? "" : ", последнее " + HISTORY_TIME.format(Instant.ofEpochMilli(last))));
+                }
+            }
+            return fitLines("📜 История изменений:\n", lines, "Подробно: /history ЦЕЛЬ [N]");
+        }
+
+        int limit = 10;
+        String query = arg;
+        int sp = arg.lastIndexOf(' ');
+        if (sp > 0) {
+            try {
+                limit = Math.max(1, Math.min(100, Integer.parseInt(arg.substring(sp + 1))));
+                query = arg.substring(0, sp).trim();
+            } catch (NumberFormatException ignored) {
+            }
+        }
+
+        // цель ищем по части имени; точное совпадение важнее частичных
+        String q = query.toLowerCase(Locale.ROOT);
+        List<Map.Entry<WatchProfile, String>> found = new ArrayList<>();
+        List<Map.Entry<WatchProfile, String>> exact = new ArrayList<>();
+        for (WatchProfile p : PROFILES) {
+            for (ChangeWatcher.Target t : p.targets()) {
+                String name = t.name().toLowerCase(Locale.ROOT);
+                if (name.equals(q)) exact.add(Map.entry(p, t.name()));
+                else if (name.contains(q)) found.add(Map.entry(p, t.name()));
+            }
+        }
+        if (!exact.isEmpty()) found = exact;
+        if (found.isEmpty()) return "Нет цели «" + query + "». Список: /history";
+        if (found.size() > 1) {
+            List<String> lines = new ArrayList<>();
+            for (Map.Entry<WatchProfile, String> e : found) lines.add("• " + e.getValue());
+            return fitLines("Под «" + first(query, 200) + "» подходят несколько целей:\n", lines, "");
+        }
+
+        WatchProfile p = found.get(0).getKey();
+        String target = found.get(0).getValue();
+        ChangeHistory h = p.history();
+        java.time.ZonedDateTime now = java.time.ZonedDateTime.now();
+        long monthStart = now.withDayOfMonth(1).truncatedTo(java.time.temporal.ChronoUnit.DAYS).toInstant().toEpochMilli();
+        long days30 = now.minusDays(30).toInstant().toEpochMilli();
+
+        StringBuilder sb = new StringBuilder("📜 ").append(PROFILES.size() > 1 ? "[" + p.id() + "] " : "")
+                .append(target).append("\n")
+                .append("Изменений: всего ").append(h.count(target))
+                .append(", в этом месяце ").append(h.countSince(target, monthStart))
+                .append(", за 30 дней ").append(h.countSince(target, days30)).append("\n");
+        List<ChangeHistory.Entry> last = h.last(target, limit);
+        if (last.isEmpty()) return sb.append("Изменений пока не было.").toString();
+        sb.append("Последние ").append(last.size()).append(":\n");
+        List<String> lines = new ArrayList<>();
+        for (ChangeHistory.Entry e : last) {
+            lines.add("• " + HISTORY_TIME.format(Instant.ofEpochMilli(e.at())) + "  "
+                    + shortHash(e.prevHash()) + " → " + shortHash(e.newHash()) + " (" + e.length() + " симв.)");
+        }
+        return fitLines(sb.toString(), lines, "");
+    }
+
+    /**
+     * Заголовок + строки + хвост в пределах HISTORY_MAX_CHARS: не влезшие строки заменяются на «… и ещё N».
+     */
+    private static String fitLines(String head, List<String> lines, String tail) {
+        StringBuilder sb = new StringBuilder(first(head, HISTORY_MAX_CHARS / 2));
+        int budget = HISTORY_MAX_CHARS - tail.length() - 20;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (sb.length() + line.length() + 1 > budget) {
+                sb.append("… и ещё ").append(lines.size() - i).append("\n");
+                break;
+            }
+            sb.append(line).append("\n");
+        }
+        return sb.append(tail).toString().strip();
+    }
+
+    private static String shortHash(String h) {
+        return h == null ? "—" : h.substring(0, Math.min(8, h.length()));
+    }
+
     /* ================== fetch (без JS) ================== */
 
     private static class FetchResult {
@@ -344,24 +819,22 @@ public class BotWatcher implements LongPollingSingleThreadUpdateConsumer {
 
         if (cookieHeader != null && !cookieHeader.isBlank()) {
             conn.header("Cookie", cookieHeader.trim());
-            conn.cookies(parseCookieHeader(cookieHeader));
+            conn.cookies(FetchSupport.parseCookieHeader(cookieHeader));
         }
 
         Connection.Response resp = conn.execute();
         int status = resp.statusCode();
         String finalUrl = resp.url().toString();
-        String headersSummary = summarizeHeaders(resp.headers());
+        String headersSummary = FetchSupport.summarizeHeaders(resp.headers());
 
         Document doc = resp.parse();
 
-        String content = (selector != null && !selector.isBlank() && !doc.select(selector).isEmpty())
-                ? doc.select(selector).outerHtml()
-                : doc.outerHtml();
+        String content = FetchSupport.selectContent(doc, selector);
 
         String title = doc.title();
         String text = doc.text();
         boolean login = looksLikeLoginPage(finalUrl, title, doc);
-        String hash = sha256(content);
+        String hash = FetchSupport.sha256(content);
 
         List<String> iframes = new ArrayList<>();
         for (Element el : doc.select("iframe[src]")) {
@@ -374,133 +847,39 @@ public class BotWatcher implements LongPollingSingleThreadUpdateConsumer {
 
     /* ================== RENDER (с JS) ================== */
 
-    private static class RenderResult {
+    static class RenderResult {
         final int status;
         final String finalUrl;
         final boolean selectorMatched;
         final File htmlFile;
         final File pngFile;
-        RenderResult(int status, String finalUrl, boolean selectorMatched, File htmlFile, File pngFile) {
+        final WebDriver driver; // авторизованный драйвер (уже закрыт, если keepOpen=false)
+        RenderResult(int status, String finalUrl, boolean selectorMatched, File htmlFile, File pngFile, WebDriver driver) {
             this.status = status;
             this.finalUrl = finalUrl;
             this.selectorMatched = selectorMatched;
             this.htmlFile = htmlFile;
             this.pngFile = pngFile;
+            this.driver = driver;
         }
     }
 
-    private static RenderResult renderWithLogin(String targetUrl,
+    static RenderResult renderWithLogin(String targetUrl,
                                                 String cookieHeader,          // не используем
                                                 String loginUrl,
                                                 String username,
                                                 String password,
                                                 String contentSelector,
-                                                String waitSelectorFallback) throws Exception {
-        io.github.bonigarcia.wdm.WebDriverManager.chromedriver().setup();
-
-        org.openqa.selenium.chrome.ChromeOptions opts = new org.openqa.selenium.chrome.ChromeOptions();
-        if (RENDER_HEADLESS) opts.addArguments("--headless=new");
-        opts.addArguments(
-                "--no-sandbox","--disable-dev-shm-usage","--disable-gpu",
-                "--window-size=1366,3000","--lang=ru-RU","--disable-blink-features=AutomationControlled",
-                "--user-agent=" + RENDER_UA
-        );
-        opts.setExperimentalOption("excludeSwitches", java.util.List.of("enable-automation"));
-        opts.setExperimentalOption("useAutomationExtension", false);
-
-        org.openqa.selenium.WebDriver driver = new org.openqa.selenium.chrome.ChromeDriver(opts);
-        LAST_DRIVER = driver;
+                                                String waitSelectorFallback,
+                                                boolean keepOpen,
+                                                CookieJar cookies) throws Exception {
+        org.openqa.selenium.WebDriver driver = newChromeDriver();
 
         java.io.File diagHtml = null, diagPng = null;
 
         try {
-            if (loginUrl == null || loginUrl.isBlank())
-                throw new IllegalStateException("WATCH_LOGIN_URL не задан.");
-
-            // 1) login?next=<WATCH_URL>
-            String loginStart = loginUrl.contains("?")
-                    ? loginUrl + "&next=" + java.net.URLEncoder.encode(targetUrl, java.nio.charset.StandardCharsets.UTF_8)
-                    : loginUrl + "?next=" + java.net.URLEncoder.encode(targetUrl, java.nio.charset.StandardCharsets.UTF_8);
-
-            driver.get(loginStart);
-            waitDomReady(driver, 25);
-            driver.switchTo().defaultContent();
-
-            // 2) поля логина
-            org.openqa.selenium.support.ui.WebDriverWait wait =
-                    new org.openqa.selenium.support.ui.WebDriverWait(driver, java.time.Duration.ofSeconds(20));
-            var emailSel = org.openqa.selenium.By.cssSelector("input[name='email']");
-            var passSel  = org.openqa.selenium.By.cssSelector("input[name='password']");
-            var emailInput = wait.until(org.openqa.selenium.support.ui.ExpectedConditions.elementToBeClickable(emailSel));
-            var passInput  = wait.until(org.openqa.selenium.support.ui.ExpectedConditions.elementToBeClickable(passSel));
-
-            // 3) ввод и submit (кнопка → ENTER → JS)
-            emailInput.click(); emailInput.clear(); emailInput.sendKeys(username);
-            passInput.click();  passInput.clear();  passInput.sendKeys(password);
-
-            var submitBtnSel = org.openqa.selenium.By.cssSelector(
-                    "button.sf-auth-page-layout__submit-btn, button[type='submit'], input[type='submit']"
-            );
-            java.util.List<org.openqa.selenium.WebElement> submitBtns = driver.findElements(submitBtnSel);
-            boolean submitted = false;
-            if (!submitBtns.isEmpty()) {
-                try {
-                    var btn = wait.until(org.openqa.selenium.support.ui.ExpectedConditions.elementToBeClickable(submitBtns.get(0)));
-                    new org.openqa.selenium.interactions.Actions(driver)
-                            .moveToElement(btn).pause(java.time.Duration.ofMillis(100)).click(btn).perform();
-                    submitted = true;
-                } catch (Exception ignored) {}
-            }
-            if (!submitted) {
-                try { passInput.sendKeys(org.openqa.selenium.Keys.ENTER); submitted = true; } catch (Exception ignored) {}
-            }
-            if (!submitted) {
-                var js = (org.openqa.selenium.JavascriptExecutor) driver;
-                Object r = js.executeScript("""
-              (function(){
-                const $e=document.querySelector("input[name='email']");
-                const $p=document.querySelector("input[name='password']");
-                if(!$e||!$p) return "NO_FIELDS";
-                const form=$e.closest("form")||$p.closest("form")||document.querySelector("form");
-                if(form&&typeof form.requestSubmit==='function'){form.requestSubmit(); return "SUBMIT_FORM";}
-                const btn=document.querySelector("button.sf-auth-page-layout__submit-btn,button[type='submit'],input[type='submit']");
-                if(btn){btn.click(); return "CLICK_BUTTON";}
-                return "NO_SUBMIT";
-              })();
-            """);
-                System.out.println("Submit fallback JS: " + r);
-            }
-
-            // 4) ждём успех логина (уход с /learning/login или пропало password или появились "session"-куки)
-            org.openqa.selenium.support.ui.WebDriverWait longWait =
-                    new org.openqa.selenium.support.ui.WebDriverWait(driver, java.time.Duration.ofSeconds(35));
-            boolean success;
-            try {
-                success = longWait.until(d -> {
-                    String href = d.getCurrentUrl().toLowerCase(java.util.Locale.ROOT);
-                    boolean leftLogin = !href.contains("/learning/login");
-                    boolean noPwd = d.findElements(org.openqa.selenium.By.cssSelector("input[type='password']")).isEmpty();
-                    boolean hasSess = false;
-                    try {
-                        String cookies = (String)((org.openqa.selenium.JavascriptExecutor)d).executeScript("return document.cookie||'';");
-                        hasSess = cookies.matches("(?i).*\\b(session|sess|csrftoken|jwt|edx)\\b.*");
-                    } catch (Throwable ignore) {}
-                    return leftLogin || noPwd || hasSess;
-                });
-            } catch (org.openqa.selenium.TimeoutException te) {
-                success = false;
-            }
-            if (!success) {
-                try { diagHtml = writeTemp("login-fail-", ".html", driver.getPageSource()); } catch (Throwable ignore) {}
-                try {
-                    byte[] shot = ((org.openqa.selenium.TakesScreenshot) driver).getScreenshotAs(org.openqa.selenium.OutputType.BYTES);
-                    diagPng = java.io.File.createTempFile("login-fail-", ".png");
-                    try (java.io.FileOutputStream fos = new java.io.FileOutputStream(diagPng)) { fos.write(shot); }
-                } catch (Throwable ignore) {}
-                if (diagHtml != null) System.err.println("Saved " + diagHtml.getAbsolutePath());
-                if (diagPng  != null) System.err.println("Saved " + diagPng.getAbsolutePath());
-                throw new IllegalStateException("Не удалось пройти логин автоматически.");
-            }
+            // 1–4) логин; куки сохраняются внутри
+            performLogin(driver, targetUrl, loginUrl, username, password, cookies);
 
             // >>> ДОПОЛНИТЕЛЬНАЯ ПАУЗА ПОСЛЕ ЛОГИНА <<<
             try { Thread.sleep(WAIT_AFTER_LOGIN_MS); } catch (InterruptedException ignored) {}
@@ -531,11 +910,11 @@ public class BotWatcher implements LongPollingSingleThreadUpdateConsumer {
                 try (java.io.FileOutputStream fos = new java.io.FileOutputStream(pngFile)) { fos.write(shot); }
             } catch (Throwable ignored) {}
 
-            if (!KEEP_BROWSER_OPEN) {
-                try { driver.quit(); } catch (Throwable ignored) {}
+            String finalUrl = driver.getCurrentUrl();
+            if (!keepOpen) {
+                DriverFactory.quit(driver);
             }
-            CURRENT_DRIVER = driver;
-            return new RenderResult(200, driver.getCurrentUrl(), matched, htmlFile, pngFile);
+            return new RenderResult(200, finalUrl, matched, htmlFile, pngFile, driver);
 
         } catch (Exception e) {
             try { diagHtml = writeTemp("login-fail-", ".html", driver.getPageSource()); } catch (Throwable ignore) {}
@@ -547,8 +926,8 @@ public class BotWatcher implements LongPollingSingleThreadUpdateConsumer {
             if (diagHtml != null) System.err.println("Saved " + diagHtml.getAbsolutePath());
             if (diagPng  != null) System.err.println("Saved " + diagPng.getAbsolutePath());
 
-            if (!KEEP_BROWSER_OPEN) {
-                try { driver.quit(); } catch (Throwable ignore) {}
+            if (!keepOpen) {
+                DriverFactory.quit(driver);
             }
             throw e;
         }
@@ -557,29 +936,174 @@ public class BotWatcher implements LongPollingSingleThreadUpdateConsumer {
 
 
 
-    /* ================== утилиты/отправка ================== */
-    private WebDriver ensureLoggedInDriver() throws Exception {
-        if (CURRENT_DRIVER != null) return CURRENT_DRIVER;
-
-        if (WATCH_USERNAME.isBlank() || WATCH_PASSWORD.isBlank() || WATCH_LOGIN_URL.isBlank()) {
-            throw new IllegalStateException("Для авторизации нужны WATCH_LOGIN_URL / WATCH_USERNAME / WATCH_PASSWORD.");
-        }
-
-        // Логинимся «как в /render», но без отправки файлов и т.п.
-        RenderResult rr = renderWithLogin(
-                WATCH_URL,
-                WATCH_COOKIES,
-                WATCH_LOGIN_URL,
-                WATCH_USERNAME,
-                WATCH_PASSWORD,
-                WATCH_SELECTOR,
-                WATCH_WAIT_SELECTOR
+    /**
+     * Только логин: форма → submit → ждём подтверждения успеха. Ничего не рендерит и не пишет на диск
+     * (кроме кук сессии, если PERSIST_COOKIES). Драйвер остаётся там, куда увёл логин.
+     */
+    private static void performLogin(WebDriver driver,
+                                     String targetUrl,
+                                     String loginUrl,
+                                     String username,
+                                     String password,
+                                     CookieJar cookieJar) throws Exception {
+        if (loginUrl == null || loginUrl.isBlank())
+            throw new IllegalStateException("WATCH_LOGIN_URL не задан.");
+
+        // 1) login?next=<WATCH_URL>
+        String loginStart = loginUrl.contains("?")
+                ? loginUrl + "&next=" + java.net.URLEncoder.encode(targetUrl, java.nio.charset.StandardCharsets.UTF_8)
+                : loginUrl + "?next=" + java.net.URLEncoder.encode(targetUrl, java.nio.charset.StandardCharsets.UTF_8);
+
+        driver.get(loginStart);
+        waitDomReady(driver, 25);
+        driver.switchTo().defaultContent();
+
+        // 2) поля логина
+        org.openqa.selenium.support.ui.WebDriverWait wait =
+                new org.openqa.selenium.support.ui.WebDriverWait(driver, java.time.Duration.ofSeconds(20));
+        var emailSel = org.openqa.selenium.By.cssSelector("input[name='email']");
+        var passSel  = org.openqa.selenium.By.cssSelector("input[name='password']");
+        var emailInput = wait.until(org.openqa.selenium.support.ui.ExpectedConditions.elementToBeClickable(emailSel));
+        var passInput  = wait.until(org.openqa.selenium.support.ui.ExpectedConditions.elementToBeClickable(passSel));
+
+        // 3) ввод и submit (кнопка → ENTER → JS)
+        emailInput.click(); emailInput.clear(); emailInput.sendKeys(username);
+        passInput.click();  passInput.clear();  passInput.sendKeys(password);
+
+        var submitBtnSel = org.openqa.selenium.By.cssSelector(
+                "button.sf-auth-page-layout__submit-btn, button[type='submit'], input[type='submit']"
         );
-        // renderWithLogin уже положит драйвер в CURRENT_DRIVER — просто вернём его:
-        if (CURRENT_DRIVER == null) {
-            throw new IllegalStateException("Логин не дал активный драйвер.");
+        java.util.List<org.openqa.selenium.WebElement> submitBtns = driver.findElements(submitBtnSel);
+        boolean submitted = false;
+        if (!submitBtns.isEmpty()) {
+            try {
+                var btn = wait.until(org.openqa.selenium.support.ui.ExpectedConditions.elementToBeClickable(submitBtns.get(0)));
+                new org.openqa.selenium.interactions.Actions(driver)
+                        .moveToElement(btn).pause(java.time.Duration.ofMillis(100)).click(btn).perform();
+                submitted = true;
+            } catch (Exception ignored) {}
+        }
+        if (!submitted) {
+            try { passInput.sendKeys(org.openqa.selenium.Keys.ENTER); submitted = true; } catch (Exception ignored) {}
+        }
+        if (!submitted) {
+            var js = (org.openqa.selenium.JavascriptExecutor) driver;
+            Object r = js.executeScript("""
+          (function(){
+            const $e=document.querySelector("input[name='email']");
+            const $p=document.querySelector("input[name='password']");
+            if(!$e||!$p) return "NO_FIELDS";
+            const form=$e.closest("form")||$p.closest("form")||document.querySelector("form");
+            if(form&&typeof form.requestSubmit==='function'){form.requestSubmit(); return "SUBMIT_FORM";}
+            const btn=document.querySelector("button.sf-auth-page-layout__submit-btn,button[type='submit'],input[type='submit']");
+            if(btn){btn.click(); return "CLICK_BUTTON";}
+            return "NO_SUBMIT";
+          })();
+        """);
+            System.out.println("Submit fallback JS: " + r);
+        }
+
+        // 4) ждём успех логина (уход с /learning/login или пропало password или появились "session"-куки)
+        org.openqa.selenium.support.ui.WebDriverWait longWait =
+                new org.openqa.selenium.support.ui.WebDriverWait(driver, java.time.Duration.ofSeconds(35));
+        boolean success;
+        try {
+            success = longWait.until(d -> {
+                String href = d.getCurrentUrl().toLowerCase(java.util.Locale.ROOT);
+                boolean leftLogin = !href.contains("/learning/login");
+                boolean noPwd = d.findElements(org.openqa.selenium.By.cssSelector("input[type='password']")).isEmpty();
+                boolean hasSess = false;
+                try {
+                    String cookies = (String)((org.openqa.selenium.JavascriptExecutor)d).executeScript("return document.cookie||'';");
+                    hasSess = cookies.matches("(?i).*\\b(session|sess|csrftoken|jwt|edx)\\b.*");
+                } catch (Throwable ignore) {}
+                return leftLogin || noPwd || hasSess;
+            });
+        } catch (org.openqa.selenium.TimeoutException te) {
+            success = false;
+        }
+        if (!success) {
+            throw new IllegalStateException("Не удалось пройти логин автоматически (url=" + driver.getCurrentUrl() + ").");
+        }
+
+        // свежая авторизация — сохраняем куки для следующих запусков
+        if (PERSIST_COOKIES) cookieJar.save(driver);
+    }
+
+    /* ================== утилиты/отправка ================== */
+    private static BrowserSession session(WatchProfile p) {
+        return SESSIONS.get(p.id());
+    }
+
+    /**
+     * Держать браузеры открытыми между прогонами можно, только если браузеры всех профилей влезают в лимит.
+     */
+    private static boolean keepBrowsers() {
+        return KEEP_BROWSER_OPEN && PROFILES.size() <= BrowserCapacity.capacity();
+    }
+
+    private static WebDriver newChromeDriver() {
+        // chromedriver разрешается один раз на процесс (см. DriverFactory)
+        return DriverFactory.newChrome(RENDER_HEADLESS, RENDER_UA);
+    }
+
+    /**
+     * Новый драйвер с сохранёнными куками. Если сессия за ними ещё жива — логин по паролю не нужен.
+     *
+     * @return авторизованный драйвер или null (кук нет / сессия истекла)
+     */
+    private static WebDriver restoreSession(WatchProfile p) {
+        CookieJar cookies = p.cookies();
+        if (!PERSIST_COOKIES || !cookies.exists()) return null;
+        WebDriver driver = newChromeDriver();
+        try {
+            long t0 = System.currentTimeMillis();
+            if (!cookies.restore(driver, p.watchUrl())) {
+                DriverFactory.quit(driver);
+                return null;
+            }
+            driver.get(p.watchUrl());
+            waitDomReady(driver, 25);
+            // SPA проверяет сессию XHR-запросами и только потом (может быть) уводит на логин
+            waitForSelectorOrRoot(driver, null, WATCH_WAIT_SELECTOR, 20);
+            waitSpaNetworkIdle(driver, WAIT_TARGET_TIMEOUT_MS, WAIT_TARGET_STABLE_MS);
+            if (BrowserSession.pageLooksLikeLogin(driver)) {
+                System.out.println("🍪 Сохранённая сессия истекла — нужен логин по паролю");
+                cookies.delete();
+                DriverFactory.quit(driver);
+                return null;
+            }
+            System.out.println("🍪 Сессия восстановлена из кук за " + (System.currentTimeMillis() - t0) + " мс");
+            return driver;
+        } catch (Exception e) {
+            System.err.println("Не удалось восстановить сессию из кук: " + e.getMessage());
+            DriverFactory.quit(driver);
+            return null;
+        }
+    }
+
+    /**
+     * Новый авторизованный драйвер для {@link BrowserSession}: сначала куки с диска, потом — пароль.
+     */
+    private static WebDriver loginForSession(WatchProfile p) throws Exception {
+        long t0 = System.nanoTime();
+        WebDriver restored = restoreSession(p);
+        if (restored != null) {
+            Metrics.observe("watcher_login_seconds", t0, "mode", "cookies");
+            return restored;
+        }
+
+        // Только логин: без рендера WATCH_URL, ожидания «сетевой тишины», скролла и rendered-*.html/png —
+        // цели /checkjs всё равно сами откроют нужные страницы
+        WebDriver driver = newChromeDriver();
+        try {
+            performLogin(driver, p.watchUrl(), p.loginUrl(), p.username(), p.password(), p.cookies());
+            Metrics.observe("watcher_login_seconds", t0, "mode", "password");
+            return driver;
+        } catch (Exception e) {
+            DriverFactory.quit(driver);
+            throw e;
         }
-        return CURRENT_DRIVER;
     }
 
 
@@ -617,15 +1141,6 @@ public class BotWatcher implements LongPollingSingleThreadUpdateConsumer {
         );
     }
 
-    private static boolean pageLooksLikeLogin(WebDriver d) {
-        try {
-            // пароль на странице? часто верный индикатор
-            return d.findElements(By.cssSelector("input[type='password']")).size() > 0
-                    || ((String)((JavascriptExecutor) d).executeScript("return document.title||'';"))
-                    .toLowerCase(Locale.ROOT).contains("login");
-        } catch (Throwable t) { return false; }
-    }
-
     private static boolean waitForSelectorOrRoot(WebDriver d, String primarySelector, String fallbackRootChild, int sec) {
         try {
             return new WebDriverWait(d, Duration.ofSeconds(sec)).until(dr -> {
@@ -656,9 +1171,80 @@ public class BotWatcher implements LongPollingSingleThreadUpdateConsumer {
 
 
     private void send(long chatId, String text) {
+        long t0 = System.nanoTime();
+        JfrEvents.TelegramCallEvent ev = telegramEvent("sendMessage", chatId);
+        try {
+            SendMessage m = SendMessage.builder().chatId(chatId).text(text).build();
+            withRetryAfter(() -> client.execute(m));
+            ev.success = true;
+        } catch (TelegramApiException e) {
+            Metrics.inc("watcher_telegram_errors_total", "method", "sendMessage");
+            ev.error = safe(e);
+            e.printStackTrace();
+        } finally {
+            Metrics.observe("watcher_telegram_seconds", t0, "method", "sendMessage");
+            ev.commit();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ApiCall {
+        void run() throws TelegramApiException;
+    }
+
+    /**
+     * Вызов Bot API; на 429 ждём retry_after и повторяем (не больше TELEGRAM_MAX_RETRIES раз).
+     * В потоке апдейтов суммарное ожидание ограничено TELEGRAM_INLINE_RETRY_MAX_MS — дольше не ждём, а сдаёмся.
+     */
+    private static void withRetryAfter(ApiCall call) throws TelegramApiException {
+        long maxWaitMs = UPDATES_THREAD.get() ? TELEGRAM_INLINE_RETRY_MAX_MS : Long.MAX_VALUE;
+        long waitedMs = 0;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                call.run();
+                return;
+            } catch (TelegramApiRequestException e) {
+                Integer retryAfter = e.getParameters() == null ? null : e.getParameters().getRetryAfter();
+                if (!Integer.valueOf(429).equals(e.getErrorCode()) || retryAfter == null
+                        || attempt >= TELEGRAM_MAX_RETRIES) throw e;
+                long waitMs = retryAfter * 1000L;
+                if (waitedMs + waitMs > maxWaitMs) {
+                    Metrics.inc("watcher_retries_total", "reason", "telegram_429_gave_up");
+                    throw e;
+                }
+                waitedMs += waitMs;
+                Metrics.inc("watcher_retries_total", "reason", "telegram_429");
+                try {
+                    Thread.sleep(waitMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static JfrEvents.TelegramCallEvent telegramEvent(String method, long chatId) {
+        JfrEvents.TelegramCallEvent ev = new JfrEvents.TelegramCallEvent();
+        ev.method = method;
+        ev.chatId = chatId;
+        ev.begin();
+        return ev;
+    }
+
+    private static boolean isAdmin(long chatId) {
+        return !ADMIN_CHAT_ID.isBlank() && ADMIN_CHAT_ID.trim().equals(String.valueOf(chatId));
+    }
+
+    /**
+     * Служебное сообщение: в ADMIN_CHAT_ID, если задан, иначе — в текущий чат.
+     */
+    private void notifyAdmin(long fallbackChatId, String text) {
+        long target = fallbackChatId;
         try {
-            client.execute(SendMessage.builder().chatId(chatId).text(text).build());
-        } catch (TelegramApiException e) { e.printStackTrace(); }
+            if (!ADMIN_CHAT_ID.isBlank()) target = Long.parseLong(ADMIN_CHAT_ID.trim());
+        } catch (NumberFormatException ignored) {}
+        send(target, text);
     }
 
     private void sendFile(long chatId, File file, String name, String caption) throws TelegramApiException {
@@ -668,7 +1254,19 @@ public class BotWatcher implements LongPollingSingleThreadUpdateConsumer {
                 .document(new InputFile(file, name))
                 .caption(caption)
                 .build();
-        client.execute(sd);
+        long t0 = System.nanoTime();
+        JfrEvents.TelegramCallEvent ev = telegramEvent("sendDocument", chatId);
+        try {
+            withRetryAfter(() -> client.execute(sd));
+            ev.success = true;
+        } catch (TelegramApiException e) {
+            Metrics.inc("watcher_telegram_errors_total", "method", "sendDocument");
+            ev.error = safe(e);
+            throw e;
+        } finally {
+            Metrics.observe("watcher_telegram_seconds", t0, "method", "sendDocument");
+            ev.commit();
+        }
     }
 
     private static File writeTemp(String prefix, String suffix, String content) throws Exception {
@@ -679,48 +1277,79 @@ public class BotWatcher implements LongPollingSingleThreadUpdateConsumer {
         return tmp;
     }
 
-    private static File writeZippedHtml(String entryName, String content) throws Exception {
-        File zip = File.createTempFile("page-", ".zip");
-        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zip))) {
-            zos.putNextEntry(new ZipEntry(entryName));
-            zos.write((content == null ? "" : content).getBytes(StandardCharsets.UTF_8));
-            zos.closeEntry();
-        }
-        return zip;
-    }
-
-    private static String sha256(String s) throws Exception {
-        byte[] digest = MessageDigest.getInstance("SHA-256")
-                .digest((s == null ? "" : s).getBytes(StandardCharsets.UTF_8));
-        StringBuilder sb = new StringBuilder(digest.length * 2);
-        for (byte b : digest) sb.append(String.format("%02x", b));
-        return sb.toString();
+    @FunctionalInterface
+    private interface ZipWriter {
+        void write(OutputStream out) throws IOException;
     }
 
-    private static Map<String, String> parseCookieHeader(String cookieHeader) {
-        Map<String, String> map = new LinkedHashMap<>();
-        if (cookieHeader == null || cookieHeader.isBlank()) return map;
-        for (String p : cookieHeader.split(";")) {
-            String s = p.trim();
-            int eq = s.indexOf('=');
-            if (eq > 0) {
-                String name = s.substring(0, eq).trim();
-                String val  = s.substring(eq + 1).trim();
-                if (!name.isEmpty()) map.put(name, val);
-            }
+    /**
+     * Документ-архив, который пишется на лету: писатель в своём потоке → pipe → тело запроса.
+     * На каждую попытку (429) архив пишется заново — прочитанный поток повторно не отправить.
+     */
+    private void sendZip(long chatId, String name, String caption, ZipWriter writer) throws TelegramApiException {
+        long t0 = System.nanoTime();
+        JfrEvents.TelegramCallEvent ev = telegramEvent("sendDocument", chatId);
+        try {
+            withRetryAfter(() -> {
+                PipedInputStream in = new PipedInputStream(64 * 1024);
+                // ошибка писателя: архив не дописан — такая отправка не считается успешной
+                java.util.concurrent.atomic.AtomicReference<IOException> broken =
+                        new java.util.concurrent.atomic.AtomicReference<>();
+                Thread t;
+                try {
+                    PipedOutputStream out = new PipedOutputStream(in);
+                    t = new Thread(() -> {
+                        try {
+                            writer.write(out);
+                            out.close();
+                        } catch (IOException e) {
+                            // out не закрываем — читатель принял бы это за конец архива и отправил обрезок;
+                            // закрытый in и умерший писатель дают ему IOException, и отправка обрывается
+                            broken.set(e);
+                            closeQuietly(in);
+                        }
+                    }, "zip-" + chatId);
+                    t.setDaemon(true);
+                    t.start();
+                    client.execute(SendDocument.builder()
+                            .chatId(chatId)
+                            .document(new InputFile(in, name))
+                            .caption(caption)
+                            .build());
+                } catch (IOException e) {
+                    throw new TelegramApiException(e);
+                } catch (TelegramApiException e) {
+                    if (broken.get() == null) throw e;
+                    t = null;
+                } finally {
+                    closeQuietly(in); // разблокировать писателя, если запрос оборвался
+                }
+                if (t != null) {
+                    try {
+                        t.join(10_000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                IOException e = broken.get();
+                if (e != null) throw new TelegramApiException("Архив " + name + " не дописан: " + e.getMessage(), e);
+            });
+            ev.success = true;
+        } catch (TelegramApiException e) {
+            Metrics.inc("watcher_telegram_errors_total", "method", "sendDocument");
+            ev.error = safe(e);
+            throw e;
+        } finally {
+            Metrics.observe("watcher_telegram_seconds", t0, "method", "sendDocument");
+            ev.commit();
         }
-        return map;
     }
 
-    private static String summarizeHeaders(Map<String,String> h) {
-        if (h == null || h.isEmpty()) return "(none)";
-        StringBuilder sb = new StringBuilder();
-        int n = 0;
-        for (var e : h.entrySet()) {
-            if (n++ >= 12) { sb.append(" ..."); break; }
-            sb.append(e.getKey()).append(": ").append(first(e.getValue(), 120)).append("\n");
+    private static void closeQuietly(java.io.Closeable c) {
+        try {
+            c.close();
+        } catch (IOException ignored) {
         }
-        return sb.toString();
     }
 
     private static boolean looksLikeLoginPage(String finalUrl, String title, Document doc) {
@@ -755,6 +1384,14 @@ public class BotWatcher implements LongPollingSingleThreadUpdateConsumer {
         }
     }
 
+    private static TelegramUrl telegramUrl(String url) {
+        if (url.isBlank()) return TelegramUrl.DEFAULT_URL;
+        URI u = URI.create(url.trim());
+        boolean https = "https".equalsIgnoreCase(u.getScheme());
+        int port = u.getPort() > 0 ? u.getPort() : (https ? 443 : 80);
+        return new TelegramUrl(https ? "https" : "http", u.getHost(), port, false);
+    }
+
     private static String requireEnv(String key) {
         String v = System.getenv(key);
         if (v == null || v.isBlank())
@@ -766,12 +1403,22 @@ public class BotWatcher implements LongPollingSingleThreadUpdateConsumer {
         return (v == null || v.isBlank()) ? def : v;
     }
     private static String nullToEmpty(String s) { return s == null ? "" : s; }
-    private static String first(String s, int n) { if (s == null) return ""; return s.length() <= n ? s : s.substring(0, n) + "..."; }
+    private static String first(String s, int n) { return FetchSupport.first(s, n); }
     private static String safe(Throwable t) { String m = t.getMessage(); return (m == null || m.isBlank()) ? t.toString() : m; }
     private static String cmd(String text) { String t = text.startsWith("/") ? text.substring(1) : text; int sp = t.indexOf(' '); return (sp < 0 ? t : t.substring(0, sp)).toLowerCase(Locale.ROOT); }
+    private static String argument(String text) { int sp = text.trim().indexOf(' '); return sp < 0 ? "" : text.trim().substring(sp + 1).trim(); }
     private static int parseIndex(String text) { try { String[] p = text.trim().split("\\s+"); if (p.length < 2) return -1; return Integer.parseInt(p[1]); } catch (Exception e) { return -1; } }
 
     private static void waitSpaNetworkIdle(org.openqa.selenium.WebDriver d, long timeoutMs, long stableMs) {
+        long t0 = System.nanoTime();
+        try {
+            awaitSpaNetworkIdle(d, timeoutMs, stableMs);
+        } finally {
+            Metrics.observe("watcher_spa_idle_seconds", t0);
+        }
+    }
+
+    private static void awaitSpaNetworkIdle(org.openqa.selenium.WebDriver d, long timeoutMs, long stableMs) {
         org.openqa.selenium.JavascriptExecutor js = (org.openqa.selenium.JavascriptExecutor) d;
         // инъекция мониторинга fetch/XHR (если ещё не стоит)
         try {
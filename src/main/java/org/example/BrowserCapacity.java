@@ -0,0 +1,53 @@
+package org.example;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Общий лимит браузеров на процесс (BROWSER_CAPACITY): сколько профилей одновременно гоняют свой Chrome.
+ *
+ * Семафор честный (fair): профили получают браузер в порядке очереди, ни один не голодает,
+ * даже если другой запускает /checkjs чаще.
+ */
+final class BrowserCapacity {
+
+    private static final int CAPACITY =
+            Math.max(1, Integer.parseInt(getenvOrDefault("BROWSER_CAPACITY", "1")));
+
+    private static final Semaphore SLOTS = new Semaphore(CAPACITY, true);
+
+    /**
+     * Работа, которой нужен браузер.
+     */
+    interface Work<T> {
+        T run() throws Exception;
+    }
+
+    private BrowserCapacity() {
+    }
+
+    static int capacity() {
+        return CAPACITY;
+    }
+
+    /**
+     * Занять слот (ждём своей очереди), выполнить работу, освободить слот.
+     */
+    static <T> T withSlot(String who, Work<T> work) throws Exception {
+        // tryAcquire() без таймаута лезет вперёд очереди; с таймаутом 0 — честный, как и acquire()
+        if (!SLOTS.tryAcquire(0, TimeUnit.SECONDS)) {
+            System.out.println("⏳ " + who + " ждёт свободный браузер (лимит " + CAPACITY + ")");
+            SLOTS.acquire();
+        }
+        try {
+            return work.run();
+        } finally {
+            SLOTS.release();
+        }
+    }
+
+    private static String getenvOrDefault(String key, String def) {
+        String v = System.getenv(key);
+        return (v == null || v.isBlank()) ? def : v;
+    }
+}
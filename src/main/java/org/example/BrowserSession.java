@@ -0,0 +1,239 @@
+package org.example;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Тёплая авторизованная сессия браузера.
+ *
+ * Идея:
+ *  - драйвер один на процесс; перед выдачей дёшево проверяем, что Chrome жив (один JS round trip)
+ *  - умер / вылетел на страницу логина — прозрачно перелогиниваемся
+ *  - раз в N минут фоновая проверка (только если драйвер сейчас никто не использует)
+ *  - prewarm() при старте бота, чтобы первый /checkjs не платил за логин
+ *  - между прогонами {@link BrowserWatchdog} решает, не пора ли пересоздать распухший браузер
+ *
+ * Всё, что трогает драйвер, идёт под одним lock: WebDriver не потокобезопасен.
+ */
+class BrowserSession {
+
+    /**
+     * Как получить новый авторизованный драйвер.
+     */
+    interface Login {
+        WebDriver login() throws Exception;
+    }
+
+    /**
+     * Работа с драйвером под lock сессии.
+     */
+    interface Task<T> {
+        T run(WebDriver driver) throws Exception;
+    }
+
+    private final Login login;
+    // сессия подтвердила, что жива (прогон прошёл, тик проверки OK) — например, сохранить обновлённые куки
+    private final java.util.function.Consumer<WebDriver> onHealthy;
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private volatile WebDriver driver;
+    private ScheduledExecutorService health;
+
+    BrowserSession(Login login, java.util.function.Consumer<WebDriver> onHealthy) {
+        this.login = login;
+        this.onHealthy = onHealthy;
+    }
+
+    /**
+     * Живой авторизованный драйвер (при необходимости — после перелогина).
+     */
+    WebDriver get() throws Exception {
+        lock.lock();
+        try {
+            if (driver != null && isAlive(driver)) return driver;
+            return relogin();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Выполнить задачу с живым драйвером, не пуская параллельно фоновую проверку.
+     */
+    <T> T use(Task<T> task) throws Exception {
+        lock.lock();
+        try {
+            T result = task.run(get());
+            healthy(driver);
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Закрыть текущий драйвер и залогиниться заново.
+     */
+    WebDriver relogin() throws Exception {
+        lock.lock();
+        try {
+            quitQuietly(driver);
+            driver = null;
+            long t0 = System.currentTimeMillis();
+            WebDriver d = login.login();
+            if (d == null) throw new IllegalStateException("Логин не дал активный драйвер.");
+            driver = d;
+            System.out.println("🔑 Сессия браузера готова за " + (System.currentTimeMillis() - t0) + " мс");
+            return d;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Взять уже авторизованный драйвер со стороны (например, после /render); старый закрываем.
+     */
+    void adopt(WebDriver d) {
+        lock.lock();
+        try {
+            if (driver != d) quitQuietly(driver);
+            driver = d;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Закрыть браузер (следующий get() залогинится заново).
+     */
+    void close() {
+        lock.lock();
+        try {
+            quitQuietly(driver);
+            driver = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Между прогонами: браузер распух — пересоздаём (куки с диска, обычно без логина по паролю);
+     * заодно закрываем чужие/забытые драйверы.
+     */
+    void recycleIfNeeded() {
+        lock.lock();
+        try {
+            WebDriver d = driver;
+            if (d == null) return;
+            String reason = BrowserWatchdog.recycleReason(d);
+            if (reason != null) {
+                System.out.println("♻️ Пересоздаём браузер: " + reason);
+                relogin();
+            }
+            BrowserWatchdog.reapOrphans(driver);
+        } catch (Exception e) {
+            System.err.println("Пересоздание браузера не удалось: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Залогиниться в фоне при старте бота.
+     */
+    void prewarm() {
+        Thread t = new Thread(() -> {
+            try {
+                get();
+            } catch (Exception e) {
+                System.err.println("Prewarm браузера не удался: " + e.getMessage());
+            }
+        }, "browser-prewarm");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Периодическая дешёвая проверка драйвера; если он сейчас занят прогоном — пропускаем тик.
+     */
+    synchronized void startHealthChecks(long intervalMs) {
+        if (intervalMs <= 0 || health != null) return;
+        health = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "browser-health");
+            t.setDaemon(true);
+            return t;
+        });
+        health.scheduleWithFixedDelay(this::healthTick, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void healthTick() {
+        if (!lock.tryLock()) return;
+        try {
+            WebDriver d = driver;
+            if (d == null) return;
+            if (!isAlive(d)) {
+                System.err.println("Драйвер не отвечает — перелогин");
+                relogin();
+            } else if (pageLooksLikeLogin(d)) {
+                System.err.println("Сессия истекла (страница логина) — перелогин");
+                relogin();
+            } else {
+                healthy(d);
+                recycleIfNeeded();
+            }
+        } catch (Exception e) {
+            System.err.println("Проверка сессии браузера: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void healthy(WebDriver d) {
+        if (d == null) return;
+        try {
+            onHealthy.accept(d);
+        } catch (Exception e) {
+            System.err.println("Сессия браузера: " + e.getMessage());
+        }
+    }
+
+    /* ======================= Проверки ======================= */
+
+    /**
+     * Chrome жив и сессия WebDriver валидна — один дешёвый round trip.
+     */
+    static boolean isAlive(WebDriver d) {
+        try {
+            d.getWindowHandle();
+            return Long.valueOf(1).equals(((JavascriptExecutor) d).executeScript("return 1;"));
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    /**
+     * Похоже, что нас выкинуло на страницу логина (сессия истекла).
+     */
+    static boolean pageLooksLikeLogin(WebDriver d) {
+        try {
+            String href = String.valueOf(d.getCurrentUrl()).toLowerCase(Locale.ROOT);
+            if (href.contains("/login") || href.contains("/signin")) return true;
+            // пароль на странице? часто верный индикатор
+            return !d.findElements(By.cssSelector("input[type='password']")).isEmpty()
+                    || String.valueOf(((JavascriptExecutor) d).executeScript("return document.title||'';"))
+                    .toLowerCase(Locale.ROOT).contains("login");
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    private static void quitQuietly(WebDriver d) {
+        DriverFactory.quit(d);
+    }
+}
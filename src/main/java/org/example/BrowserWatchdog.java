@@ -0,0 +1,153 @@
+package org.example;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chromium.ChromiumDriver;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Сторож памяти браузера.
+ *
+ * При KEEP_BROWSER_OPEN=true один Chrome живёт сутками, а память SPA растёт. Поэтому:
+ *  - RSS дерева процессов chromedriver/Chrome (потомки JVM, /proc/<pid>/status, только Linux)
+ *  - размер JS-кучи страницы через CDP Performance.getMetrics (JSHeapUsedSize)
+ *  - превышен порог — сессия мягко пересоздаёт браузер МЕЖДУ прогонами (куки с диска → без логина)
+ *  - осиротевшие драйверы (не текущий драйвер сессии) закрываются
+ *  - shutdown hook закрывает все драйверы и добивает оставшиеся процессы Chrome
+ */
+class BrowserWatchdog {
+
+    private static final long MAX_RSS_MB =
+            Long.parseLong(getenvOrDefault("BROWSER_MAX_RSS_MB", "1500"));
+
+    private static final long MAX_JS_HEAP_MB =
+            Long.parseLong(getenvOrDefault("BROWSER_MAX_JS_HEAP_MB", "400"));
+
+    // драйвер моложе этого — не сирота, а чья-то текущая работа (например, /render)
+    private static final long ORPHAN_MIN_AGE_MS = 10 * 60_000;
+
+    private static volatile boolean hookInstalled;
+
+    private BrowserWatchdog() {
+    }
+
+    /**
+     * Пора ли пересоздать браузер. Возвращает причину или null.
+     */
+    static String recycleReason(WebDriver d) {
+        long rssMb = browserTreeRssKb() / 1024;
+        if (rssMb > MAX_RSS_MB) {
+            return "RSS Chrome " + rssMb + " МБ > " + MAX_RSS_MB + " МБ";
+        }
+        long heapMb = jsHeapUsedBytes(d) / (1024 * 1024);
+        if (heapMb > MAX_JS_HEAP_MB) {
+            return "JS heap " + heapMb + " МБ > " + MAX_JS_HEAP_MB + " МБ";
+        }
+        return null;
+    }
+
+    /**
+     * Закрыть все драйверы, кроме текущего драйвера сессии.
+     */
+    static void reapOrphans(WebDriver keep) {
+        int n = DriverFactory.quitAllExcept(keep, ORPHAN_MIN_AGE_MS);
+        if (n > 0) System.out.println("🧹 Закрыто осиротевших драйверов: " + n);
+    }
+
+    /**
+     * При остановке JVM — закрыть драйверы и добить процессы Chrome, чтобы не оставлять их хосту.
+     */
+    static synchronized void installShutdownHook() {
+        if (hookInstalled) return;
+        hookInstalled = true;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            DriverFactory.quitAllExcept(null, 0);
+            destroyBrowserProcesses();
+        }, "browser-shutdown"));
+    }
+
+    /* ======================= измерения ======================= */
+
+    /**
+     * Суммарный RSS (КБ) chromedriver и его Chrome-потомков; -1 — не смогли измерить (не Linux).
+     */
+    static long browserTreeRssKb() {
+        long total = 0;
+        boolean measured = false;
+        for (ProcessHandle ph : (Iterable<ProcessHandle>) ProcessHandle.current().descendants()::iterator) {
+            if (!isBrowserProcess(ph)) continue;
+            long kb = rssKb(ph.pid());
+            if (kb >= 0) {
+                total += kb;
+                measured = true;
+            }
+        }
+        return measured ? total : -1;
+    }
+
+    /**
+     * Занятая JS-куча текущей страницы (байт); -1 — не смогли измерить.
+     */
+    static long jsHeapUsedBytes(WebDriver d) {
+        if (d == null) return -1;
+        if (d instanceof ChromiumDriver cd) {
+            try {
+                cd.executeCdpCommand("Performance.enable", Map.of());
+                Map<String, Object> res = cd.executeCdpCommand("Performance.getMetrics", Map.of());
+                Object metrics = res == null ? null : res.get("metrics");
+                if (metrics instanceof List<?> list) {
+                    for (Object o : list) {
+                        if (o instanceof Map<?, ?> m && "JSHeapUsedSize".equals(m.get("name"))
+                                && m.get("value") instanceof Number n) {
+                            return n.longValue();
+                        }
+                    }
+                }
+            } catch (Exception ignored) {
+                // CDP недоступен — пробуем performance.memory
+            }
+        }
+        try {
+            Object v = ((JavascriptExecutor) d).executeScript(
+                    "return (performance.memory && performance.memory.usedJSHeapSize) || -1;");
+            return v instanceof Number n ? n.longValue() : -1;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static boolean isBrowserProcess(ProcessHandle ph) {
+        String cmd = ph.info().command().orElse("").toLowerCase(Locale.ROOT);
+        return cmd.contains("chrome") || cmd.contains("chromium");
+    }
+
+    private static long rssKb(long pid) {
+        Path status = Path.of("/proc", String.valueOf(pid), "status");
+        try {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (Exception ignored) {
+            // процесс успел завершиться или нет /proc
+        }
+        return -1;
+    }
+
+    private static void destroyBrowserProcesses() {
+        ProcessHandle.current().descendants()
+                .filter(BrowserWatchdog::isBrowserProcess)
+                .forEach(ProcessHandle::destroyForcibly);
+    }
+
+    private static String getenvOrDefault(String key, String def) {
+        String v = System.getenv(key);
+        return (v == null || v.isBlank()) ? def : v;
+    }
+}
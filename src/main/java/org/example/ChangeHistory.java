@@ -0,0 +1,199 @@
+package org.example;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * История изменений целей профиля: когда и сколько раз менялась цель — за всё время, без чтения всего журнала.
+ *
+ * Идея:
+ *  - changes.log — журнал только на дописывание: одна JSON-строка на изменение (время, цель, хеши, длина текста)
+ *  - на каждую цель — индекс &lt;хеш имени&gt;.idx из записей фиксированной длины [время мс: long][смещение в журнале: long];
+ *    время в индексе не убывает, поэтому «с какого момента» — бинарный поиск по отображённому в память файлу
+ *  - «последние N» — хвост индекса + N чтений журнала по смещениям
+ *  - дозапись — под OS-блокировкой (changes.log.lock), как и у файла состояния: несколько процессов на одной папке
+ *
+ * Недописанная запись индекса (падение посреди записи) отбрасывается при следующей дозаписи.
+ */
+final class ChangeHistory {
+
+    static final int ENTRY_BYTES = 16;
+
+    private static final Gson G = new Gson();
+
+    /**
+     * Одно изменение цели.
+     */
+    record Entry(long at, String target, String prevHash, String newHash, int length) {
+    }
+
+    private final File dir;
+    private final File log;
+
+    ChangeHistory(File dir) {
+        this.dir = dir;
+        this.log = new File(dir, "changes.log");
+    }
+
+    /**
+     * Дописать изменение в журнал и индекс цели.
+     */
+    void append(String target, String prevHash, String newHash, int length) {
+        long t0 = System.nanoTime();
+        try {
+            Files.createDirectories(dir.toPath());
+            File lockFile = new File(dir, "changes.log.lock");
+            try (FileChannel lockCh = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = lockCh.lock();
+                 FileChannel logCh = FileChannel.open(log.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileChannel idxCh = FileChannel.open(indexFile(target).toPath(),
+                         StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+                long idxSize = idxCh.size() - idxCh.size() % ENTRY_BYTES;
+                idxCh.truncate(idxSize);
+                // время в индексе не убывает (часы могли уйти назад) — иначе бинарный поиск врёт
+                long at = System.currentTimeMillis();
+                if (idxSize > 0) at = Math.max(at, readLong(idxCh, idxSize - ENTRY_BYTES));
+
+                long offset = logCh.size();
+                byte[] line = (G.toJson(new Entry(at, target, prevHash, newHash, length)) + "\n")
+                        .getBytes(StandardCharsets.UTF_8);
+                writeFully(logCh, ByteBuffer.wrap(line), offset);
+
+                ByteBuffer rec = ByteBuffer.allocate(ENTRY_BYTES).putLong(at).putLong(offset).flip();
+                writeFully(idxCh, rec, idxSize);
+            }
+        } catch (Exception e) {
+            System.err.println("История: изменение " + target + " не записано: " + e.getMessage());
+        } finally {
+            Metrics.observe("watcher_history_seconds", t0, "op", "append");
+        }
+    }
+
+    /**
+     * Число изменений цели за всё время.
+     */
+    long count(String target) {
+        File idx = indexFile(target);
+        return idx.isFile() ? idx.length() / ENTRY_BYTES : 0;
+    }
+
+    /**
+     * Число изменений цели начиная с момента since (мс) — бинарным поиском по индексу.
+     */
+    long countSince(String target, long since) {
+        long t0 = System.nanoTime();
+        try {
+            MappedByteBuffer idx = map(target);
+            if (idx == null) return 0;
+            int n = idx.capacity() / ENTRY_BYTES;
+            return n - lowerBound(idx, n, since);
+        } catch (IOException e) {
+            System.err.println("История: индекс " + target + " не прочитан: " + e.getMessage());
+            return 0;
+        } finally {
+            Metrics.observe("watcher_history_seconds", t0, "op", "count");
+        }
+    }
+
+    /**
+     * Последние limit изменений цели, новые первыми.
+     */
+    List<Entry> last(String target, int limit) {
+        long t0 = System.nanoTime();
+        List<Entry> out = new ArrayList<>();
+        try {
+            MappedByteBuffer idx = map(target);
+            if (idx == null || limit <= 0) return out;
+            int n = idx.capacity() / ENTRY_BYTES;
+            try (RandomAccessFile raf = new RandomAccessFile(log, "r")) {
+                for (int i = n - 1; i >= Math.max(0, n - limit); i--) {
+                    raf.seek(idx.getLong(i * ENTRY_BYTES + 8));
+                    String line = raf.readLine();
+                    if (line == null) break;
+                    // readLine читает байты как Latin-1 — возвращаем UTF-8
+                    out.add(G.fromJson(new String(line.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8),
+                            Entry.class));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("История: журнал " + target + " не прочитан: " + e.getMessage());
+        } finally {
+            Metrics.observe("watcher_history_seconds", t0, "op", "last");
+        }
+        return out;
+    }
+
+    /**
+     * Время последнего изменения цели (мс) или -1.
+     */
+    long lastAt(String target) {
+        try {
+            MappedByteBuffer idx = map(target);
+            if (idx == null) return -1;
+            int n = idx.capacity() / ENTRY_BYTES;
+            return n == 0 ? -1 : idx.getLong((n - 1) * ENTRY_BYTES);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /* ======================= helpers ======================= */
+
+    File indexFile(String target) {
+        try {
+            return new File(dir, ChangeWatcher.sha256(target).substring(0, 16) + ".idx");
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Индекс цели, отображённый в память только целыми записями; null — истории нет.
+     */
+    private MappedByteBuffer map(String target) throws IOException {
+        File idx = indexFile(target);
+        if (!idx.isFile()) return null;
+        try (FileChannel ch = FileChannel.open(idx.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size() - ch.size() % ENTRY_BYTES;
+            if (size == 0) return null;
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * Первая запись со временем &gt;= since.
+     */
+    private static int lowerBound(ByteBuffer idx, int n, long since) {
+        int lo = 0, hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (idx.getLong(mid * ENTRY_BYTES) < since) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static long readLong(FileChannel ch, long position) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(8);
+        while (b.hasRemaining()) {
+            if (ch.read(b, position + b.position()) < 0) throw new IOException("обрыв индекса");
+        }
+        return b.flip().getLong();
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer b, long position) throws IOException {
+        while (b.hasRemaining()) ch.write(b, position + b.position());
+    }
+}
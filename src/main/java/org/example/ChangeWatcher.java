@@ -8,6 +8,8 @@ import org.openqa.selenium.support.ui.WebDriverWait;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.time.Instant;
 import java.util.*;
@@ -20,6 +22,8 @@ import java.util.NoSuchElementException;
  *  - На каждую «цель» (Target) выполняем сценарий шагов: GO/CLICK/CLICK_TEXT(_ANY/_OR_GO)/WAIT/WAIT_TEXT(_ANY)/SNAP
  *  - По SNAP-селектору берём видимый нормализованный текст -> считаем SHA-256
  *  - Предыдущее состояние (хэши) храним в watch-state.json; если хэш изменился — добавляем Change
+ *  - Цели можно описать в JSON (TARGETS_FILE) — файл перечитывается на лету при изменении
+ *  - Цели, состояние и breaker'ы — свои у каждого профиля наблюдения (см. WatchProfile)
  *
  * Вызов из бота после логина:
  *   var res = ChangeWatcher.runChecksWithHtml(driver);
@@ -45,66 +49,129 @@ public class ChangeWatcher {
             "#root > div > div > div > div > main > div > "
                     + "div.sf-outline-page__outline-container > div > nav > ul > li:nth-child(7) > span";
 
+    /* ======================= Circuit breaker по целям ======================= */
+
+    // после стольких подряд падений цель пропускается
+    private static final int BREAKER_FAILURES =
+            Integer.parseInt(getenvOrDefault("BREAKER_FAILURES", "3"));
+
+    // первая пауза перед пробной попыткой, дальше удваивается
+    private static final long BREAKER_BACKOFF_MS =
+            Long.parseLong(getenvOrDefault("BREAKER_BACKOFF_MS", "600000"));
+
+    private static final long BREAKER_MAX_BACKOFF_MS =
+            Long.parseLong(getenvOrDefault("BREAKER_MAX_BACKOFF_MS", "21600000"));
+
+    static CircuitBreakers newBreakers() {
+        return new CircuitBreakers(BREAKER_FAILURES, BREAKER_BACKOFF_MS, BREAKER_MAX_BACKOFF_MS);
+    }
+
+    /* ======================= Подавление «мигания» ======================= */
+
+    // сколько прошлых хешей цели помнить; хеш из этого списка считается изменением, только если увиден дважды подряд
+    // (SPA иногда рендерит страницу то с ленивым блоком, то без — без этого каждое переключение было бы «изменением»);
+    // 0 — выключено
+    private static final int FLAP_RING_SIZE =
+            Math.max(0, Integer.parseInt(getenvOrDefault("FLAP_RING_SIZE", "4")));
+
+    // прежний текст цели (watch-texts) нужен только для диффа в дайджесте — без DIGEST_MODE на диск не пишем
+    private static final boolean KEEP_TEXTS =
+            Boolean.parseBoolean(getenvOrDefault("DIGEST_MODE", "false"));
+
+    /* ======================= Бюджет времени прогона ======================= */
+
+    // общий лимит на один /checkjs (логин + все цели); не уложились — отдаём частичный результат
+    static final long RUN_BUDGET_MS =
+            Long.parseLong(getenvOrDefault("CHECK_RUN_BUDGET_MS", "300000"));
+
+    // потолок на driver.get(), чтобы загрузка страницы не съела весь бюджет
+    private static final long PAGE_LOAD_TIMEOUT_MS = 60_000;
+
+    /* ======================= Режим вкладок ======================= */
+
+    // цели идут вкладками в одном браузере: загрузка страниц перекрывается
+    private static final boolean CHECK_TABS =
+            Boolean.parseBoolean(getenvOrDefault("CHECK_TABS", "false"));
+
+    // сколько вкладок грузим одновременно
+    private static final int CHECK_TABS_MAX =
+            Math.max(1, Integer.parseInt(getenvOrDefault("CHECK_TABS_MAX", "3")));
+
+    /* ======================= Навигация внутри SPA ======================= */
+
+    // GO-шаг внутри уже загруженного приложения — через history.pushState, без driver.get()
+    private static final boolean SPA_NAVIGATION =
+            Boolean.parseBoolean(getenvOrDefault("SPA_NAVIGATION", "true"));
+
+    // сколько ждём, что роутер перерисовал #root, прежде чем откатиться на полную загрузку
+    private static final long SPA_NAV_TIMEOUT_MS =
+            Long.parseLong(getenvOrDefault("SPA_NAV_TIMEOUT_MS", "5000"));
+
     /* ======================= ТАРГЕТЫ (под себя) ======================= */
 
-    static final List<Target> TARGETS = List.of(
-            new Target("Course: Home",
-                    Steps.of(
-                            Step.go(env("WATCH_URL")),
-                            Step.waitSel("#root > *"),
-                            Step.snap("main")
-                    )
-            ),
-            new Target("Course: Announcements",
-                    Steps.of(
-                            Step.go(env("WATCH_URL")),
-                            Step.waitSel("#root > *"),
-                            Step.clickTextAny("Объявления", "Announcements", "Новости"),
-                            Step.waitTextAny("Объявления", "Announcements", "Новости"),
-                            Step.waitSel("main, .sf-announce-list, [data-announcements], #root > *"),
-                            Step.snap("main, .sf-announce-list, [data-announcements]")
-                    )
-            ),
-            // 1) Java-страница курса
-            new Target("Course: Java page",
-                    Steps.of(
-                            Step.go(env("WATCH_URL")),
-                            Step.waitSel("#root > *"),
-                            Step.waitSel(SEL_JAVA_PAGE),
-                            Step.click(SEL_JAVA_PAGE),
-                            Step.waitSel("main, #root > *"),
-                            Step.snap("main")
-                    )
-            ),
-            // 2) Модуль «Основы конвейерной разработки»
-            new Target("Course: Java · Основы конвейерной разработки",
-                    Steps.of(
-                            Step.go(env("WATCH_URL")),
-                            Step.waitSel("#root > *"),
-                            Step.waitSel(SEL_JAVA_PAGE),
-                            Step.click(SEL_JAVA_PAGE),
-                            Step.waitSel("main, #root > *"),
-                            Step.waitSel(SEL_JAVA_PIPELINE),
-                            Step.click(SEL_JAVA_PIPELINE),
-                            Step.waitSel("main, #root > *"),
-                            Step.snap("main")
-                    )
-            ),
-            // 3) Модуль «Алгоритмы и структуры данных»
-            new Target("Course: Java · Алгоритмы и структуры данных",
-                    Steps.of(
-                            Step.go(env("WATCH_URL")),
-                            Step.waitSel("#root > *"),
-                            Step.waitSel(SEL_JAVA_PAGE),
-                            Step.click(SEL_JAVA_PAGE),
-                            Step.waitSel("main, #root > *"),
-                            Step.waitSel(SEL_JAVA_ALGO),
-                            Step.click(SEL_JAVA_ALGO),
-                            Step.waitSel("main, #root > *"),
-                            Step.snap("main")
-                    )
-            )
-    );
+    /**
+     * Встроенные цели (если у профиля нет файла целей, см. TargetConfig).
+     */
+    static List<Target> builtinTargets(String watchUrl) {
+        return List.of(
+                new Target("Course: Home",
+                        Steps.of(
+                                Step.go(watchUrl),
+                                Step.waitSel("#root > *"),
+                                Step.snap("main")
+                        )
+                ),
+                new Target("Course: Announcements",
+                        Steps.of(
+                                Step.go(watchUrl),
+                                Step.waitSel("#root > *"),
+                                Step.clickTextAny("Объявления", "Announcements", "Новости"),
+                                Step.waitTextAny("Объявления", "Announcements", "Новости"),
+                                Step.waitSel("main, .sf-announce-list, [data-announcements], #root > *"),
+                                Step.snap("main, .sf-announce-list, [data-announcements]")
+                        )
+                ),
+                // 1) Java-страница курса
+                new Target("Course: Java page",
+                        Steps.of(
+                                Step.go(watchUrl),
+                                Step.waitSel("#root > *"),
+                                Step.waitSel(SEL_JAVA_PAGE),
+                                Step.click(SEL_JAVA_PAGE),
+                                Step.waitSel("main, #root > *"),
+                                Step.snap("main")
+                        )
+                ),
+                // 2) Модуль «Основы конвейерной разработки»
+                new Target("Course: Java · Основы конвейерной разработки",
+                        Steps.of(
+                                Step.go(watchUrl),
+                                Step.waitSel("#root > *"),
+                                Step.waitSel(SEL_JAVA_PAGE),
+                                Step.click(SEL_JAVA_PAGE),
+                                Step.waitSel("main, #root > *"),
+                                Step.waitSel(SEL_JAVA_PIPELINE),
+                                Step.click(SEL_JAVA_PIPELINE),
+                                Step.waitSel("main, #root > *"),
+                                Step.snap("main")
+                        )
+                ),
+                // 3) Модуль «Алгоритмы и структуры данных»
+                new Target("Course: Java · Алгоритмы и структуры данных",
+                        Steps.of(
+                                Step.go(watchUrl),
+                                Step.waitSel("#root > *"),
+                                Step.waitSel(SEL_JAVA_PAGE),
+                                Step.click(SEL_JAVA_PAGE),
+                                Step.waitSel("main, #root > *"),
+                                Step.waitSel(SEL_JAVA_ALGO),
+                                Step.click(SEL_JAVA_ALGO),
+                                Step.waitSel("main, #root > *"),
+                                Step.snap("main")
+                        )
+                )
+        );
+    }
 
     /* ======================= Публичный API ======================= */
 
@@ -120,127 +187,509 @@ public class ChangeWatcher {
      * - список изменений
      * - карту HTML-снимков по имени цели
      * - карту PNG-скриншотов по имени цели
+     * - пропущенные цели (разомкнут breaker) и цели, чей breaker только что разомкнулся
      */
     public static RunResult runChecksWithHtml(WebDriver driver) throws Exception {
-        State state = State.load();
-        List<Change> changes = new ArrayList<>();
-        Map<String, String> htmlByTarget = new LinkedHashMap<>();
-        Map<String, File> screenshotByTarget = new LinkedHashMap<>();
+        return runChecksWithHtml(driver, Deadline.in(RUN_BUDGET_MS));
+    }
+
+    /**
+     * То же, но с общим дедлайном: он передаётся в каждый шаг и ожидание;
+     * цели, на которые не хватило времени, попадают в skippedTargets.
+     */
+    public static RunResult runChecksWithHtml(WebDriver driver, Deadline deadline) throws Exception {
+        return runChecksWithHtml(driver, deadline, null);
+    }
+
+    /**
+     * То же, но если посреди сценария сессия истекла (вылетели на страницу логина) —
+     * перелогиниваемся через relogin и повторяем текущую цель один раз.
+     */
+    public static RunResult runChecksWithHtml(WebDriver driver, Deadline deadline, Relogin relogin) throws Exception {
+        return runChecksWithHtml(WatchProfile.primary(), driver, deadline, relogin);
+    }
+
+    /**
+     * Прогон целей конкретного профиля: его цели, его файл состояния, его breaker'ы.
+     */
+    static RunResult runChecksWithHtml(WatchProfile profile, WebDriver driver, Deadline deadline,
+                                       Relogin relogin) throws Exception {
+        return runChecksWithHtml(profile, driver, deadline, relogin, null);
+    }
+
+    /**
+     * Потоковый вариант: результат каждой цели отдаётся в listener сразу после её SNAP,
+     * а не копится до конца прогона. HTML и скриншоты в RunResult тогда не попадают (карты пустые),
+     * в changes — без renderedHtml; освобождать скриншот — забота listener'а.
+     */
+    static RunResult runChecksWithHtml(WatchProfile profile, WebDriver driver, Deadline deadline,
+                                       Relogin relogin, TargetListener listener) throws Exception {
+        List<Target> current = profile.targets();
+        Run run = new Run(profile, State.load(profile.stateFile()), deadline, driver, relogin, listener);
+        // во вкладках сетевые запросы целей перемешаны — кассеты пишутся/читаются только по одной цели
+        if (CHECK_TABS && !NetworkTape.enabled()) {
+            runInTabs(run, current);
+        } else {
+            for (Target t : current) {
+                if (run.admit(t)) run.check(t);
+            }
+        }
+        run.state.mergeAndSave(profile.stateFile(), run.touched);
+        return run.result();
+    }
+
+    /**
+     * Режим вкладок: для пачки целей открываем по вкладке в ОДНОМ браузере и запускаем загрузку
+     * первого GO во всех сразу (без ожидания), затем по очереди переключаемся и доводим сценарии до SNAP.
+     * Сетевые ожидания целей перекрываются, браузер и куки — общие.
+     */
+    private static void runInTabs(Run run, List<Target> targets) {
+        List<Target> batch = new ArrayList<>();
+        for (Target t : targets) {
+            if (!run.admit(t)) continue;
+            batch.add(t);
+            if (batch.size() >= CHECK_TABS_MAX) {
+                runTabBatch(run, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) runTabBatch(run, batch);
+    }
+
+    private static void runTabBatch(Run run, List<Target> batch) {
+        WebDriver d = run.driver;
+        String home;
+        try {
+            home = d.getWindowHandle();
+        } catch (Exception e) {
+            // драйвер не отвечает — пусть обычный путь разберётся (перелогин / ошибка цели)
+            for (Target t : batch) run.check(t);
+            return;
+        }
+
+        // 1) стартуем навигацию во всех вкладках, не дожидаясь загрузки
+        Map<Target, String> tabs = new LinkedHashMap<>();
+        for (Target t : batch) {
+            Step first = t.steps().isEmpty() ? null : t.steps().get(0);
+            if (first == null || first.type() != Type.GO) continue;
+            try {
+                d.switchTo().newWindow(WindowType.TAB);
+                js(d, "window.location.href = arguments[0];", first.arg());
+                tabs.put(t, d.getWindowHandle());
+            } catch (Exception e) {
+                System.err.println("Не удалось открыть вкладку для " + t.name() + ": " + e.getMessage());
+            }
+        }
+
+        // 2) по очереди доводим каждую вкладку до SNAP и закрываем её
+        for (Target t : batch) {
+            String handle = tabs.get(t);
+            if (handle == null || run.driver != d) {
+                // вкладки нет (первый шаг не GO) или драйвер сменился после перелогина — обычный путь
+                run.check(t);
+                continue;
+            }
+            if (run.deadline.expired()) {
+                run.skipped.put(t.name(), "не хватило бюджета времени прогона");
+                closeTab(d, handle, home);
+                continue;
+            }
+            long t0 = System.nanoTime();
+            boolean retried = false;
+            JfrEvents.setTarget(t.name());
+            try {
+                d.switchTo().window(handle);
+                List<Step> rest = t.steps().subList(1, t.steps().size());
+                run.record(t, runScenarioAndExtractSnapshot(d, rest, t.ignore(), run.deadline, true));
+            } catch (SessionExpired se) {
+                retried = true;
+            } catch (Exception ex) {
+                run.fail(t, ex);
+            } finally {
+                JfrEvents.setTarget(null);
+                // как в check(): упавшие и прерванные цели тоже в гистограмме, иначе вкладки выглядят быстрее;
+                // при повторе замер закроет check() — с попыткой во вкладке, как и в последовательном режиме
+                if (!retried) Metrics.observe("watcher_target_seconds", t0, "target", t.name());
+            }
+            if (retried) {
+                closeTab(d, handle, home);
+                run.check(t, t0); // перелогин + повтор цели обычным путём
+                continue;
+            }
+            closeTab(d, handle, home);
+        }
+
+        // драйвер сменился посреди пачки — недоделанные вкладки старого браузера уже не нужны
+        if (run.driver != d) {
+            for (String h : tabs.values()) closeTab(d, h, home);
+        }
+    }
+
+    private static void closeTab(WebDriver d, String handle, String home) {
+        try {
+            if (d.getWindowHandles().contains(handle)) {
+                d.switchTo().window(handle);
+                d.close();
+            }
+            d.switchTo().window(home);
+        } catch (Exception ignored) {
+        }
+    }
 
-        for (Target t : TARGETS) {
+    /**
+     * Накопитель одного прогона: состояние, результаты по целям и текущий драйвер (меняется после перелогина).
+     */
+    private static class Run {
+        final WatchProfile profile;
+        final CircuitBreakers breakers;
+        final State state;
+        final Deadline deadline;
+        final Relogin relogin;
+        final TargetListener listener; // null — копим результаты в RunResult
+        WebDriver driver;
+
+        final List<Change> changes = new ArrayList<>();
+        final Map<String, String> htmlByTarget = new LinkedHashMap<>();
+        final Map<String, File> screenshotByTarget = new LinkedHashMap<>();
+        final Map<String, String> skipped = new LinkedHashMap<>();
+        final Map<String, String> broken = new LinkedHashMap<>();
+        final Set<String> touched = new LinkedHashSet<>(); // цели, чьё состояние обновили в этом прогоне
+
+        Run(WatchProfile profile, State state, Deadline deadline, WebDriver driver, Relogin relogin,
+            TargetListener listener) {
+            this.profile = profile;
+            this.breakers = profile.breakers();
+            this.state = state;
+            this.deadline = deadline;
+            this.driver = driver;
+            this.relogin = relogin;
+            this.listener = listener;
+        }
+
+        /**
+         * Можно ли запускать цель: есть бюджет времени и breaker не разомкнут.
+         */
+        boolean admit(Target t) {
+            if (deadline.expired()) {
+                skipped.put(t.name(), "не хватило бюджета времени прогона");
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            if (!breakers.allow(t.name(), now)) {
+                long retryIn = breakers.retryInMs(t.name(), now);
+                skipped.put(t.name(), "breaker разомкнут (" + breakers.failures(t.name())
+                        + " падений подряд), повтор через " + (retryIn / 1000) + " с");
+                return false;
+            }
+            if (WorkerLeases.enabled()) {
+                // несколько процессов бота: цель проверяет только тот, у кого lease; он получил тот же
+                // запрос прогона (WorkerLeases.publishRun) и пришлёт результат сам. В отчёте цель всё равно
+                // видна — если владелец умер, до передачи lease её результата не будет
+                String owner = WorkerLeases.INSTANCE.tryAcquire(profile.leaseKey(t.name()));
+                if (!owner.equals(WorkerLeases.INSTANCE.id())) {
+                    skipped.put(t.name(), "проверяет воркер " + owner);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Полный сценарий цели в текущей вкладке; сессия истекла — перелогин и один повтор.
+         */
+        void check(Target t) {
+            check(t, System.nanoTime());
+        }
+
+        /**
+         * @param t0 начало замера watcher_target_seconds (System.nanoTime)
+         */
+        void check(Target t, long t0) {
+            JfrEvents.setTarget(t.name());
             try {
-                Snapshot snap = runScenarioAndExtractSnapshot(driver, t.steps);
-                String text = snap.text();
-                String html = snap.html();
-                File screenshot = snap.screenshot();
+                Snapshot snap;
+                try {
+                    snap = scenario(t);
+                } catch (SessionExpired se) {
+                    if (relogin == null) throw se;
+                    System.out.println("Сессия истекла на цели " + t.name() + " — перелогин и повтор");
+                    Metrics.inc("watcher_retries_total", "reason", "session_expired");
+                    driver = relogin.relogin();
+                    snap = scenario(t);
+                }
+                record(t, snap);
+            } catch (Exception ex) {
+                fail(t, ex);
+            } finally {
+                Metrics.observe("watcher_target_seconds", t0, "target", t.name());
+                JfrEvents.setTarget(null);
+            }
+        }
+
+        /**
+         * Сценарий цели; при NETWORK_TAPE — с записью/воспроизведением её кассеты.
+         */
+        private Snapshot scenario(Target t) throws Exception {
+            try (NetworkTape.Session tape = NetworkTape.attach(driver, profile.leaseKey(t.name()))) {
+                Snapshot snap = runScenarioAndExtractSnapshot(driver, t.steps, t.ignore(), deadline);
+                tape.keep();
+                return snap;
+            }
+        }
 
+        void record(Target t, Snapshot snap) throws Exception {
+            String text = snap.text();
+            String html = snap.html();
+            File screenshot = snap.screenshot();
+
+            if (listener == null) {
                 // сохраняем HTML/скрин для дебага/отправки в бота
                 htmlByTarget.put(t.name(), html);
                 if (screenshot != null) {
                     screenshotByTarget.put(t.name(), screenshot);
                 }
+            }
 
-                String hash = sha256(text);
-                String prev = state.hashes.get(t.name());
+            String hash = sha256(text);
+            String prev = state.hashes.get(t.name());
+
+            Change change = null;
+            String previousText = null;
+            if (state.observe(t.name(), hash, touched)) {
+                change = new Change(t.name(), prev, hash, text, html);
+                if (KEEP_TEXTS) previousText = swapText(profile.textFile(t.name()), text);
+                // в потоковом режиме HTML уходит listener'у, в итоге прогона его не держим
+                changes.add(listener == null ? change : new Change(t.name(), prev, hash, text, null));
+                Metrics.inc("watcher_changes_total", "target", t.name());
+                profile.history().append(t.name(), prev, hash, text.length());
+            }
+            breakers.onSuccess(t.name());
 
-                if (prev == null || !prev.equals(hash)) {
-                    changes.add(new Change(t.name(), prev, hash, text, html));
-                    state.hashes.put(t.name(), hash);
-                    state.updatedAt.put(t.name(), Instant.now().toString());
+            if (listener != null) {
+                try {
+                    listener.onResult(new TargetResult(t.name(), change, html, screenshot, previousText));
+                } catch (Exception e) {
+                    // проблема доставки — не поломка цели: breaker и состояние не трогаем
+                    System.err.println("Результат цели " + t.name() + " не передан: " + e.getMessage());
                 }
-            } catch (Exception ex) {
-                // Не валим всю проверку из-за одной цели
-                System.err.println("Target failed: " + t.name() + " — " + ex.getMessage());
             }
         }
-        state.save();
-        return new RunResult(changes, htmlByTarget, screenshotByTarget);
+
+        void fail(Target t, Exception ex) {
+            if (ex instanceof Deadline.Exceeded || deadline.expired()) {
+                // Бюджет кончился посреди цели — это не поломка цели, breaker не трогаем
+                skipped.put(t.name(), "прервана: бюджет времени прогона исчерпан");
+                return;
+            }
+            // Не валим всю проверку из-за одной цели
+            System.err.println("Target failed: " + t.name() + " — " + ex.getMessage());
+            Metrics.inc("watcher_target_failures_total", "target", t.name());
+            if (breakers.onFailure(t.name(), System.currentTimeMillis())) {
+                broken.put(t.name(), String.valueOf(ex.getMessage()));
+            }
+        }
+
+        RunResult result() {
+            return new RunResult(changes, htmlByTarget, screenshotByTarget, skipped, broken);
+        }
     }
 
     /* ======================= Выполнение сценария ======================= */
 
-    private static Snapshot runScenarioAndExtractSnapshot(WebDriver d, List<Step> steps) throws Exception {
+    private static Snapshot runScenarioAndExtractSnapshot(WebDriver d, List<Step> steps, Ignore ignore,
+                                                          Deadline dl) throws Exception {
+        return runScenarioAndExtractSnapshot(d, steps, ignore, dl, false);
+    }
+
+    /**
+     * @param loadStarted навигация уже запущена заранее (режим вкладок) — сначала дожидаемся загрузки
+     */
+    private static Snapshot runScenarioAndExtractSnapshot(WebDriver d, List<Step> steps, Ignore ignore, Deadline dl,
+                                                          boolean loadStarted) throws Exception {
+        try {
+            if (loadStarted) {
+                waitDomReady(d, dl.sec(25));
+                if (BrowserSession.pageLooksLikeLogin(d)) throw new SessionExpired(d.getCurrentUrl(), null);
+            }
+            return runSteps(d, steps, ignore, dl);
+        } catch (Deadline.Exceeded | SessionExpired e) {
+            throw e;
+        } catch (Exception e) {
+            // шаг упал — возможно, потому что нас выкинуло на логин
+            if (BrowserSession.pageLooksLikeLogin(d)) throw new SessionExpired(d.getCurrentUrl(), e);
+            throw e;
+        }
+    }
+
+    private static Snapshot runSteps(WebDriver d, List<Step> steps, Ignore ignore, Deadline dl) throws Exception {
         for (Step s : steps) {
-            switch (s.type) {
-                case GO -> {
-                    d.get(s.arg);
-                    waitDomReady(d, 25);
-                }
-                case CLICK -> {
-                    WebElement el = findClickable(d, s.arg, 25);
-                    new org.openqa.selenium.interactions.Actions(d)
-                            .moveToElement(el).pause(java.time.Duration.ofMillis(120)).click(el).perform();
-                    sleep(400);
-                    waitDomReady(d, 20);
-                }
-                case CLICK_TEXT -> {
-                    // Кликаем по innerText через JS
-                    waitSpaNetworkIdle(d, 10000, 700);
-                    clickByInnerTextJs(d, s.arg, 30);
-                    sleep(500);
-                    waitDomReady(d, 20);
-                    waitSpaNetworkIdle(d, 10000, 700);
-                }
-                case CLICK_TEXT_ANY -> {
-                    waitSpaNetworkIdle(d, 10000, 700);
-                    clickAnyByInnerTextJs(d, splitAny(s.arg), 30);
-                    sleep(500);
-                    waitDomReady(d, 20);
-                    waitSpaNetworkIdle(d, 10000, 700);
+            dl.check("шаг " + s.type);
+            long t0 = System.nanoTime();
+            JfrEvents.StepEvent ev = new JfrEvents.StepEvent();
+            ev.begin();
+            boolean ok = false;
+            try {
+                Snapshot snap = runStep(d, s, ignore, dl);
+                ok = true;
+                if (snap != null) return snap;
+            } finally {
+                Metrics.observe("watcher_step_seconds", t0, "type", s.type.name(), "outcome", ok ? "ok" : "error");
+                ev.end();
+                if (ev.shouldCommit()) {
+                    ev.target = JfrEvents.target();
+                    ev.type = s.type.name();
+                    ev.arg = s.arg;
+                    ev.outcome = ok ? "ok" : "error";
+                    ev.commit();
                 }
-                case CLICK_TEXT_OR_GO -> {
-                    waitSpaNetworkIdle(d, 10000, 700);
-                    List<String> parts = splitAny(s.arg); // [text, fallbackUrl?]
-                    String text = parts.isEmpty() ? "" : parts.get(0);
-                    String fallback = parts.size() >= 2 ? parts.get(1) : "";
-                    try {
-                        clickByInnerTextJs(d, text, 30);
-                        sleep(600);
-                        waitDomReady(d, 20);
-                        waitSpaNetworkIdle(d, 10000, 700);
-                    } catch (Exception miss) {
-                        if (fallback != null && !fallback.isBlank()) {
-                            ((JavascriptExecutor) d).executeScript("window.location.href = arguments[0];", fallback);
-                            waitDomReady(d, 20);
-                            waitSpaNetworkIdle(d, 10000, 700);
-                        } else {
-                            throw miss;
-                        }
+            }
+        }
+        throw new IllegalStateException("Сценарий не завершён шагом SNAP — нечего сравнивать.");
+    }
+
+    /**
+     * Один шаг сценария; для SNAP — снимок (текст без игнорируемых областей цели), для остальных — null.
+     */
+    private static Snapshot runStep(WebDriver d, Step s, Ignore ignore, Deadline dl) throws Exception {
+        switch (s.type) {
+            case GO -> {
+                navigate(d, s.arg, dl);
+                if (BrowserSession.pageLooksLikeLogin(d)) throw new SessionExpired(d.getCurrentUrl(), null);
+            }
+            case CLICK -> {
+                WebElement el = findClickable(d, s.arg, dl.sec(25));
+                new org.openqa.selenium.interactions.Actions(d)
+                        .moveToElement(el).pause(java.time.Duration.ofMillis(120)).click(el).perform();
+                sleep(dl.ms(400));
+                waitDomReady(d, dl.sec(20));
+            }
+            case CLICK_TEXT -> {
+                // Кликаем по innerText через JS
+                waitSpaNetworkIdle(d, dl.ms(10000), 700);
+                clickByInnerTextJs(d, s.arg, dl.sec(30));
+                sleep(dl.ms(500));
+                waitDomReady(d, dl.sec(20));
+                waitSpaNetworkIdle(d, dl.ms(10000), 700);
+            }
+            case CLICK_TEXT_ANY -> {
+                waitSpaNetworkIdle(d, dl.ms(10000), 700);
+                clickAnyByInnerTextJs(d, splitAny(s.arg), 30, dl);
+                sleep(dl.ms(500));
+                waitDomReady(d, dl.sec(20));
+                waitSpaNetworkIdle(d, dl.ms(10000), 700);
+            }
+            case CLICK_TEXT_OR_GO -> {
+                waitSpaNetworkIdle(d, dl.ms(10000), 700);
+                List<String> parts = splitAny(s.arg); // [text, fallbackUrl?]
+                String text = parts.isEmpty() ? "" : parts.get(0);
+                String fallback = parts.size() >= 2 ? parts.get(1) : "";
+                try {
+                    clickByInnerTextJs(d, text, dl.sec(30));
+                    sleep(dl.ms(600));
+                    waitDomReady(d, dl.sec(20));
+                    waitSpaNetworkIdle(d, dl.ms(10000), 700);
+                } catch (Exception miss) {
+                    if (fallback != null && !fallback.isBlank()) {
+                        js(d, "window.location.href = arguments[0];", fallback);
+                        waitDomReady(d, dl.sec(20));
+                        waitSpaNetworkIdle(d, dl.ms(10000), 700);
+                    } else {
+                        throw miss;
                     }
                 }
-                case WAIT -> waitVisible(d, s.arg, 20);
-                case WAIT_TEXT -> waitTextPresent(d, s.arg, 20);
-                case WAIT_TEXT_ANY -> waitAnyTextPresent(d, splitAny(s.arg), 20);
-                case SNAP -> {
-                    // 1) Ждём, чтобы целевой блок стал видимым
-                    waitVisible(d, s.arg, 20);
-                    // 2) Ждём «сетевую тишину» НЕМНОГО меньше, чем раньше
-                    waitSpaNetworkIdle(d, 8000, 800);
-
-                    // 3) Берём нормализованный текст — как и раньше
-                    String text = extractNormalizedText(d, s.arg);
-                    // 4) Параллельно берём HTML-кусок (или всю страницу, если селектор не найден)
-                    String html = extractHtml(d, s.arg);
-                    // 5) Делаем скриншот страницы
-                    File screenshot = null;
-                    try {
-                        byte[] shot = ((TakesScreenshot) d).getScreenshotAs(OutputType.BYTES);
-                        screenshot = File.createTempFile("watch-", ".png");
-                        try (FileOutputStream fos = new FileOutputStream(screenshot)) {
-                            fos.write(shot);
-                        }
-                    } catch (Throwable ignored) {
+            }
+            case WAIT -> waitVisible(d, s.arg, dl.sec(20));
+            case WAIT_TEXT -> waitTextPresent(d, s.arg, dl.sec(20));
+            case WAIT_TEXT_ANY -> waitAnyTextPresent(d, splitAny(s.arg), dl.sec(20));
+            case SNAP -> {
+                // 1) Ждём, чтобы целевой блок стал видимым
+                waitVisible(d, s.arg, dl.sec(20));
+                // 2) Ждём «сетевую тишину» НЕМНОГО меньше, чем раньше
+                waitSpaNetworkIdle(d, dl.ms(8000), 800);
+
+                // 3) Берём нормализованный текст — без игнорируемых областей и замаскированных фрагментов
+                String text = extractNormalizedText(d, s.arg, ignore);
+                // 4) Параллельно берём HTML-кусок (или всю страницу, если селектор не найден)
+                String html = extractHtml(d, s.arg);
+                // 5) Делаем скриншот страницы
+                File screenshot = null;
+                long shotStart = System.nanoTime();
+                try {
+                    byte[] shot = ((TakesScreenshot) d).getScreenshotAs(OutputType.BYTES);
+                    screenshot = File.createTempFile("watch-", ".png");
+                    try (FileOutputStream fos = new FileOutputStream(screenshot)) {
+                        fos.write(shot);
                     }
-
-                    return new Snapshot(text, html, screenshot);
+                } catch (Throwable ignored) {
                 }
+                Metrics.observe("watcher_screenshot_seconds", shotStart);
+
+                return new Snapshot(text, html, screenshot);
             }
         }
-        throw new IllegalStateException("Сценарий не завершён шагом SNAP — нечего сравнивать.");
+        return null;
     }
 
     /* ======================= Selenium утилиты ======================= */
 
+    /**
+     * GO-шаг: если драйвер уже внутри приложения (тот же origin, #root отрисован) —
+     * переходим client-side роутингом (pushState + popstate), без повторной загрузки и загрузки React.
+     * Если роутер не отреагировал — полная загрузка через driver.get().
+     */
+    private static void navigate(WebDriver d, String url, Deadline dl) {
+        if (SPA_NAVIGATION && trySpaNavigate(d, url, dl)) return;
+        WebDriver.Timeouts timeouts = d.manage().timeouts();
+        java.time.Duration before = timeouts.getPageLoadTimeout();
+        timeouts.pageLoadTimeout(java.time.Duration.ofMillis(dl.ms(PAGE_LOAD_TIMEOUT_MS)));
+        try {
+            d.get(url);
+        } finally {
+            // драйвер общий и живёт дольше прогона: урезанный под остаток бюджета таймаут
+            // не должен достаться следующим driver.get() (логин, перелогин, /render)
+            timeouts.pageLoadTimeout(before);
+        }
+        waitDomReady(d, dl.sec(25));
+    }
+
+    private static boolean trySpaNavigate(WebDriver d, String url, Deadline dl) {
+        String script = """
+                  const target = new URL(arguments[0], location.href);
+                  if (target.origin !== location.origin) return "CROSS_ORIGIN";
+                  const root = document.getElementById('root');
+                  if (!root || root.children.length === 0) return "NO_APP";
+                  // тот же адрес: роутер не перерисует — состояние страницы сбросит только полная загрузка
+                  if (target.href === location.href) return "SAME_URL";
+                  // считаем мутации под #root, чтобы понять, что роутер действительно перерисовал страницу
+                  window.__spaNavMutations = 0;
+                  if (window.__spaNavObserver) window.__spaNavObserver.disconnect();
+                  window.__spaNavObserver = new MutationObserver(function(m){ window.__spaNavMutations += m.length; });
+                  window.__spaNavObserver.observe(root, {childList: true, subtree: true});
+                  history.pushState({}, '', target.href);
+                  window.dispatchEvent(new PopStateEvent('popstate', {state: history.state}));
+                  return "OK";
+                """;
+        String check = """
+                  const root = document.getElementById('root');
+                  return location.href === new URL(arguments[0], location.href).href
+                      && (window.__spaNavMutations || 0) > 0
+                      && !!root && root.children.length > 0
+                      && document.readyState === 'complete';
+                """;
+        try {
+            Object r = js(d, script, url);
+            if (!"OK".equals(r)) return false;
+            new WebDriverWait(d, java.time.Duration.ofMillis(dl.ms(SPA_NAV_TIMEOUT_MS)))
+                    .until(w -> Boolean.TRUE.equals(js(w, check, url)));
+            return true;
+        } catch (Deadline.Exceeded e) {
+            throw e;
+        } catch (Exception e) {
+            System.out.println("SPA-навигация не удалась, полная загрузка: " + url + " — " + e.getClass().getSimpleName());
+            return false;
+        }
+    }
+
     private static String extractHtml(WebDriver d, String css) {
         String script = """
                   const sel = arguments[0];
@@ -253,13 +702,13 @@ public class ChangeWatcher {
                   const root = document.documentElement || document.body;
                   return root ? root.outerHTML : "";
                 """;
-        Object res = ((JavascriptExecutor) d).executeScript(script, css);
+        Object res = js(d, script, css);
         return res == null ? "" : res.toString();
     }
 
     private static void waitDomReady(WebDriver d, int sec) {
         new WebDriverWait(d, java.time.Duration.ofSeconds(sec))
-                .until(wd -> "complete".equals(((JavascriptExecutor) wd).executeScript("return document.readyState")));
+                .until(wd -> "complete".equals(js(wd, "return document.readyState")));
     }
 
     private static void waitVisible(WebDriver d, String css, int sec) {
@@ -294,7 +743,7 @@ public class ChangeWatcher {
                 try {
                     List<WebElement> ab = n.findElements(By.xpath("ancestor-or-self::a | ancestor-or-self::button"));
                     WebElement clickTarget = ab.isEmpty() ? n : ab.get(0);
-                    ((JavascriptExecutor) w).executeScript("arguments[0].scrollIntoView({block:'center'});", clickTarget);
+                    js(w, "arguments[0].scrollIntoView({block:'center'});", clickTarget);
                     if (clickTarget.isDisplayed() && clickTarget.isEnabled()) return clickTarget;
                 } catch (Throwable ignore) {
                 }
@@ -324,7 +773,7 @@ public class ChangeWatcher {
                     try {
                         List<WebElement> ab = n.findElements(By.xpath("ancestor-or-self::a | ancestor-or-self::button"));
                         WebElement clickTarget = ab.isEmpty() ? n : ab.get(0);
-                        ((JavascriptExecutor) w).executeScript("arguments[0].scrollIntoView({block:'center'});", clickTarget);
+                        js(w, "arguments[0].scrollIntoView({block:'center'});", clickTarget);
                         if (clickTarget.isDisplayed() && clickTarget.isEnabled()) return clickTarget;
                     } catch (Throwable ignore) {
                     }
@@ -352,8 +801,8 @@ public class ChangeWatcher {
     }
 
     private static void jsClick(WebDriver d, WebElement el) {
-        ((JavascriptExecutor) d).executeScript("arguments[0].scrollIntoView({block:'center'});", el);
-        ((JavascriptExecutor) d).executeScript("arguments[0].click();", el);
+        js(d, "arguments[0].scrollIntoView({block:'center'});", el);
+        js(d, "arguments[0].click();", el);
     }
 
     /**
@@ -384,7 +833,7 @@ public class ChangeWatcher {
 
         WebDriverWait wait = new WebDriverWait(d, java.time.Duration.ofSeconds(sec));
         Boolean ok = wait.until(w -> {
-            Object r = ((JavascriptExecutor) w).executeScript(script, text);
+            Object r = js(w, script, text);
             return Boolean.TRUE.equals(r);
         });
         if (!Boolean.TRUE.equals(ok)) {
@@ -393,34 +842,49 @@ public class ChangeWatcher {
     }
 
     /**
-     * Перебирает варианты текста и кликает по первому успешному.
+     * Перебирает варианты текста и кликает по первому успешному (каждая попытка — в пределах дедлайна).
      */
-    private static void clickAnyByInnerTextJs(WebDriver d, List<String> texts, int sec) {
+    private static void clickAnyByInnerTextJs(WebDriver d, List<String> texts, int sec, Deadline dl) {
         for (String t : texts) {
             try {
-                clickByInnerTextJs(d, t, sec);
+                clickByInnerTextJs(d, t, dl.sec(sec));
                 return;
+            } catch (Deadline.Exceeded e) {
+                throw e;
             } catch (Exception ignored) {
             }
         }
         throw new NoSuchElementException("Не найден ни один текст: " + texts);
     }
 
-    private static String extractNormalizedText(WebDriver d, String css) {
+    /**
+     * Текст цели без игнорируемых областей. Селектор ignore, который браузер не понял, — ошибка цели:
+     * молча пропущенный, он оставил бы в хеше счётчики и даты, и цель «мигала» бы на каждом прогоне.
+     */
+    private static String extractNormalizedText(WebDriver d, String css, Ignore ignore) {
         String script = """
                   const sel = arguments[0];
                   const el = document.querySelector(sel);
-                  if(!el) return "";
+                  if(!el) return ["", []];
                   const clone = el.cloneNode(true);
                   clone.querySelectorAll('script,style,link,noscript').forEach(n=>n.remove());
+                  // игнорируемые области цели (счётчики, «последний визит», рекомендации)
+                  const bad = [];
+                  for (const ig of arguments[1]) {
+                    try { clone.querySelectorAll(ig).forEach(n=>n.remove()); } catch (e) { bad.push(ig); }
+                  }
                   const text = clone.innerText || clone.textContent || "";
-                  return text;
+                  return [text, bad];
                 """;
-        String raw = (String) ((JavascriptExecutor) d).executeScript(script, css);
-        return normalize(raw);
+        List<?> res = (List<?>) js(d, script, css, ignore.selectors());
+        List<?> bad = (List<?>) res.get(1);
+        if (!bad.isEmpty()) {
+            throw new IllegalArgumentException("браузер не понял ignore-селектор(ы) " + bad + " — исправьте файл целей");
+        }
+        return normalize(ignore.mask((String) res.get(0)));
     }
 
-    private static String normalize(String s) {
+    static String normalize(String s) {
         if (s == null) return "";
         String t = s.replaceAll("\\u00A0", " "); // nbsp
         t = t.replaceAll("[\\t\\r]+", " ");
@@ -432,9 +896,17 @@ public class ChangeWatcher {
      * Ждём «сетевую тишину» SPA: нет fetch/XHR и нет skeleton-элементов.
      */
     private static void waitSpaNetworkIdle(WebDriver d, long timeoutMs, long stableMs) {
-        JavascriptExecutor js = (JavascriptExecutor) d;
+        long t0 = System.nanoTime();
+        try {
+            awaitSpaNetworkIdle(d, timeoutMs, stableMs);
+        } finally {
+            Metrics.observe("watcher_spa_idle_seconds", t0);
+        }
+    }
+
+    private static void awaitSpaNetworkIdle(WebDriver d, long timeoutMs, long stableMs) {
         try {
-            js.executeScript("""
+            js(d, """
                         (function(){
                           if (window.__netmonInstalled) return;
                           window.__netmonInstalled = true;
@@ -461,8 +933,8 @@ public class ChangeWatcher {
         long quietSince = -1L;
         while (System.currentTimeMillis() < end) {
             try {
-                Long pending = ((Number) js.executeScript("return (window.__pendingRequests||0);")).longValue();
-                Boolean hasSkeleton = (Boolean) js.executeScript(
+                Long pending = ((Number) js(d, "return (window.__pendingRequests||0);")).longValue();
+                Boolean hasSkeleton = (Boolean) js(d, 
                         "return !!document.querySelector('.sf-skeleton, .skeleton, [data-loading=\"true\"], [aria-busy=\"true\"]);"
                 );
                 if (pending == 0 && !Boolean.TRUE.equals(hasSkeleton)) {
@@ -480,6 +952,44 @@ public class ChangeWatcher {
         }
     }
 
+    /**
+     * executeScript с JFR-событием на каждый round trip.
+     */
+    private static Object js(WebDriver d, String script, Object... args) {
+        JfrEvents.ScriptEvent ev = new JfrEvents.ScriptEvent();
+        ev.begin();
+        try {
+            return ((JavascriptExecutor) d).executeScript(script, args);
+        } finally {
+            ev.end();
+            if (ev.shouldCommit()) {
+                ev.target = JfrEvents.target();
+                ev.script = abbreviate(script.strip(), 200);
+                ev.args = argTypes(args);
+                ev.commit();
+            }
+        }
+    }
+
+    /**
+     * Аргументы скрипта для JFR — только типы и длины: среди них бывают логин, пароль и куки.
+     */
+    private static String argTypes(Object[] args) {
+        StringBuilder sb = new StringBuilder();
+        for (Object a : args) {
+            if (sb.length() > 0) sb.append(", ");
+            if (a == null) sb.append("null");
+            else if (a instanceof CharSequence cs) sb.append("String[").append(cs.length()).append(']');
+            else if (a instanceof Collection<?> c) sb.append(a.getClass().getSimpleName()).append('[').append(c.size()).append(']');
+            else sb.append(a.getClass().getSimpleName());
+        }
+        return abbreviate(sb.toString(), 200);
+    }
+
+    private static String abbreviate(String s, int max) {
+        return s.length() <= max ? s : s.substring(0, max) + "…";
+    }
+
     private static void sleep(long ms) {
         try {
             Thread.sleep(ms);
@@ -487,7 +997,24 @@ public class ChangeWatcher {
         }
     }
 
-    private static String sha256(String s) throws Exception {
+    /**
+     * Прочитать прежний текст цели и записать новый (атомарно). Ошибки диска не мешают прогону.
+     */
+    private static String swapText(File file, String text) {
+        String previous = null;
+        try {
+            if (file.isFile()) previous = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+            Files.createDirectories(file.getParentFile().toPath());
+            File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+            Files.writeString(tmp.toPath(), text == null ? "" : text, StandardCharsets.UTF_8);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            System.err.println("Текст цели не сохранён (" + file + "): " + e.getMessage());
+        }
+        return previous;
+    }
+
+    static String sha256(String s) throws Exception {
         byte[] h = MessageDigest.getInstance("SHA-256")
                 .digest((s == null ? "" : s).getBytes(StandardCharsets.UTF_8));
         StringBuilder sb = new StringBuilder(h.length * 2);
@@ -495,15 +1022,14 @@ public class ChangeWatcher {
         return sb.toString();
     }
 
-    private static String env(String key) {
+    private static String getenvOrEmpty(String key) {
         String v = System.getenv(key);
-        if (v == null || v.isBlank()) throw new IllegalStateException("ENV " + key + " не задан");
-        return v;
+        return v == null ? "" : v;
     }
 
-    private static String getenvOrEmpty(String key) {
+    private static String getenvOrDefault(String key, String def) {
         String v = System.getenv(key);
-        return v == null ? "" : v;
+        return (v == null || v.isBlank()) ? def : v;
     }
 
     /* ======================= Модели шагов/таргетов ======================= */
@@ -554,7 +1080,42 @@ public class ChangeWatcher {
         }
     }
 
-    record Target(String name, List<Step> steps) {
+    record Target(String name, List<Step> steps, Ignore ignore) {
+        Target(String name, List<Step> steps) {
+            this(name, steps, Ignore.NONE);
+        }
+    }
+
+    /**
+     * Что не должно влиять на хеш цели: CSS-селекторы удаляются из клона DOM перед извлечением текста,
+     * совпадения регулярных выражений в тексте заменяются на {@link #MASK}.
+     */
+    record Ignore(List<String> selectors, List<java.util.regex.Pattern> masks) {
+        static final Ignore NONE = new Ignore(List.of(), List.of());
+        static final String MASK = "*";
+
+        String mask(String text) {
+            if (text == null || masks.isEmpty()) return text;
+            String t = text;
+            for (java.util.regex.Pattern p : masks) t = p.matcher(t).replaceAll(MASK);
+            return t;
+        }
+    }
+
+    /**
+     * Как получить новый авторизованный драйвер, если сессия истекла посреди прогона.
+     */
+    public interface Relogin {
+        WebDriver relogin() throws Exception;
+    }
+
+    /**
+     * Сценарий упёрся в страницу логина — сессия истекла.
+     */
+    static class SessionExpired extends RuntimeException {
+        SessionExpired(String url, Throwable cause) {
+            super("Сессия истекла: открылась страница логина (" + url + ")", cause);
+        }
     }
 
     /* ======================= Состояние (watch-state.json) ======================= */
@@ -562,33 +1123,142 @@ public class ChangeWatcher {
     static class State {
         Map<String, String> hashes = new LinkedHashMap<>();
         Map<String, String> updatedAt = new LinkedHashMap<>();
+        // недавние прежние хеши цели (старые → новые, не больше FLAP_RING_SIZE)
+        Map<String, List<String>> recent = new LinkedHashMap<>();
+        // хеш из recent, увиденный один раз и ждущий подтверждения
+        Map<String, String> pending = new LinkedHashMap<>();
 
-        static final File FILE = new File(System.getProperty("user.dir"), "watch-state.json");
         static final Gson G = new Gson();
         static final java.lang.reflect.Type STATE_JSON_TYPE = new TypeToken<State>() {
         }.getType();
 
-        static State load() {
-            if (!FILE.exists()) return new State();
-            try (Reader r = new InputStreamReader(new FileInputStream(FILE), StandardCharsets.UTF_8)) {
+        static State load(File file) {
+            if (!file.exists()) return new State();
+            JfrEvents.StateIoEvent ev = new JfrEvents.StateIoEvent();
+            ev.begin();
+            try (Reader r = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
                 State s = G.fromJson(r, STATE_JSON_TYPE);
                 if (s == null) s = new State();
                 if (s.hashes == null) s.hashes = new LinkedHashMap<>();
                 if (s.updatedAt == null) s.updatedAt = new LinkedHashMap<>();
+                if (s.recent == null) s.recent = new LinkedHashMap<>();
+                if (s.pending == null) s.pending = new LinkedHashMap<>();
+                ev.targets = s.hashes.size();
                 return s;
             } catch (Exception e) {
                 e.printStackTrace();
                 return new State();
+            } finally {
+                ev.operation = "load";
+                ev.file = file.getPath();
+                ev.commit();
+            }
+        }
+
+        /**
+         * Очередной хеш цели: {@link #confirm} + {@link #accept}. В touched попадает цель, чьё состояние
+         * поменялось — включая одного лишь кандидата в pending (появился, сменился, отменился),
+         * иначе mergeAndSave его не сохранит и подтверждение никогда не наступит.
+         *
+         * @return true — это изменение
+         */
+        boolean observe(String name, String hash, Collection<String> touched) {
+            String pendingBefore = pending.get(name);
+            if (confirm(name, hash)) {
+                accept(name, hash);
+                touched.add(name);
+                return true;
             }
+            if (!Objects.equals(pendingBefore, pending.get(name))) touched.add(name);
+            return false;
+        }
+
+        /**
+         * Считать ли новый хеш изменением:
+         *  - тот же хеш — нет (ожидавший подтверждения кандидат сбрасывается);
+         *  - хеша нет среди недавних — да, сразу;
+         *  - хеш недавно уже был (страница «мигает» назад) — только при втором появлении подряд.
+         */
+        boolean confirm(String name, String hash) {
+            String prev = hashes.get(name);
+            if (hash.equals(prev)) {
+                pending.remove(name);
+                return false;
+            }
+            if (prev == null || FLAP_RING_SIZE == 0) return true;
+            List<String> ring = recent.get(name);
+            if (ring == null || !ring.contains(hash) || hash.equals(pending.get(name))) return true;
+            pending.put(name, hash);
+            Metrics.inc("watcher_flaps_suppressed_total", "target", name);
+            return false;
+        }
+
+        /**
+         * Принять изменение: прежний хеш уходит в кольцо недавних.
+         */
+        void accept(String name, String hash) {
+            String prev = hashes.put(name, hash);
+            updatedAt.put(name, Instant.now().toString());
+            pending.remove(name);
+            if (prev == null || FLAP_RING_SIZE == 0) return;
+            List<String> ring = recent.computeIfAbsent(name, k -> new ArrayList<>());
+            ring.remove(prev);
+            ring.remove(hash);
+            ring.add(prev);
+            while (ring.size() > FLAP_RING_SIZE) ring.remove(0);
         }
 
-        void save() {
-            try (Writer w = new OutputStreamWriter(new FileOutputStream(FILE), StandardCharsets.UTF_8)) {
+        void save(File file) {
+            try (Writer w = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
                 G.toJson(this, w);
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
+
+        /**
+         * Безопасная запись при нескольких процессах: под OS-блокировкой перечитываем файл с диска,
+         * переносим в него только цели, обновлённые в этом прогоне, и атомарно подменяем файл.
+         */
+        void mergeAndSave(File file, Collection<String> touched) {
+            if (touched.isEmpty()) return;
+            JfrEvents.StateIoEvent ev = new JfrEvents.StateIoEvent();
+            ev.begin();
+            ev.operation = "mergeAndSave";
+            ev.file = file.getPath();
+            ev.targets = touched.size();
+            File lockFile = new File(file.getPath() + ".lock");
+            try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(lockFile.toPath(),
+                    java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.WRITE);
+                 java.nio.channels.FileLock ignored = ch.lock()) {
+                State onDisk = load(file);
+                for (String name : touched) {
+                    copyTarget(this, onDisk, name);
+                }
+                File tmp = new File(file.getPath() + ".tmp");
+                try (Writer w = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+                    G.toJson(onDisk, w);
+                }
+                java.nio.file.Files.move(tmp.toPath(), file.toPath(),
+                        java.nio.file.StandardCopyOption.REPLACE_EXISTING, java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                ev.commit();
+            }
+        }
+
+        private static void copyTarget(State from, State to, String name) {
+            copyEntry(from.hashes, to.hashes, name);
+            copyEntry(from.updatedAt, to.updatedAt, name);
+            copyEntry(from.recent, to.recent, name);
+            copyEntry(from.pending, to.pending, name);
+        }
+
+        private static <V> void copyEntry(Map<String, V> from, Map<String, V> to, String name) {
+            if (from.containsKey(name)) to.put(name, from.get(name));
+            else to.remove(name);
+        }
     }
 
     /**
@@ -599,10 +1269,32 @@ public class ChangeWatcher {
 
     /**
      * Итог выполнения всех таргетов: изменения + HTML/скрины по каждой цели.
+     * skippedTargets — имя цели → причина пропуска;
+     * brokenTargets — цели, чей breaker разомкнулся в этом прогоне (имя → последняя ошибка).
      */
     public record RunResult(List<Change> changes,
                             Map<String, String> htmlByTarget,
-                            Map<String, File> screenshotByTarget) {
+                            Map<String, File> screenshotByTarget,
+                            Map<String, String> skippedTargets,
+                            Map<String, String> brokenTargets) {
+    }
+
+    /**
+     * Результат одной цели для потокового прогона: change == null — без изменений;
+     * previousText — текст до изменения (null, если его не было, цель не менялась или DIGEST_MODE выключен).
+     */
+    public record TargetResult(String name, Change change, String html, File screenshot, String previousText) {
+        public boolean changed() {
+            return change != null;
+        }
+    }
+
+    /**
+     * Получатель результатов целей по мере готовности (вызывается в потоке прогона).
+     */
+    @FunctionalInterface
+    public interface TargetListener {
+        void onResult(TargetResult result) throws Exception;
     }
 
     /* ======================= Описание изменения ======================= */
@@ -0,0 +1,84 @@
+package org.example;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Circuit breaker на каждую цель (Target).
+ *
+ * Идея:
+ *  - после N подряд упавших прогонов цели «размыкаем» её и пропускаем, не тратя 20–30 с на WebDriverWait
+ *  - по истечении паузы делаем одну пробную попытку (half-open); снова упала — пауза удваивается
+ *  - успешный прогон полностью сбрасывает счётчики
+ *  - о размыкании сообщаем один раз (пока цель не починится)
+ *
+ * Состояние живёт только в памяти процесса.
+ */
+class CircuitBreakers {
+
+    private final int failureThreshold;
+    private final long baseBackoffMs;
+    private final long maxBackoffMs;
+
+    private final Map<String, Breaker> byTarget = new LinkedHashMap<>();
+
+    CircuitBreakers(int failureThreshold, long baseBackoffMs, long maxBackoffMs) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.baseBackoffMs = Math.max(1, baseBackoffMs);
+        this.maxBackoffMs = Math.max(this.baseBackoffMs, maxBackoffMs);
+    }
+
+    /**
+     * Можно ли сейчас запускать цель: замкнут или пауза уже истекла (пробная попытка).
+     */
+    synchronized boolean allow(String target, long nowMs) {
+        Breaker b = byTarget.get(target);
+        return b == null || b.openUntilMs <= nowMs;
+    }
+
+    /**
+     * Сколько ещё ждать до пробной попытки (0 — если можно запускать).
+     */
+    synchronized long retryInMs(String target, long nowMs) {
+        Breaker b = byTarget.get(target);
+        return b == null ? 0 : Math.max(0, b.openUntilMs - nowMs);
+    }
+
+    synchronized void onSuccess(String target) {
+        byTarget.remove(target);
+    }
+
+    /**
+     * Учитывает падение цели.
+     *
+     * @return true, если breaker только что разомкнулся и об этом ещё не сообщали
+     */
+    synchronized boolean onFailure(String target, long nowMs) {
+        Breaker b = byTarget.computeIfAbsent(target, k -> new Breaker());
+        b.failures++;
+        if (b.failures < failureThreshold) return false;
+
+        // экспоненциальная пауза: base, 2*base, 4*base ... но не больше max
+        int shift = Math.min(b.trips, 30);
+        b.trips++;
+        long backoff = baseBackoffMs << shift;
+        if (backoff <= 0 || backoff > maxBackoffMs) backoff = maxBackoffMs;
+        b.openUntilMs = nowMs + backoff;
+
+        if (b.notified) return false;
+        b.notified = true;
+        return true;
+    }
+
+    synchronized int failures(String target) {
+        Breaker b = byTarget.get(target);
+        return b == null ? 0 : b.failures;
+    }
+
+    private static class Breaker {
+        int failures;     // подряд упавших прогонов
+        int trips;        // сколько раз размыкался (для экспоненты)
+        long openUntilMs; // до какого момента цель пропускаем
+        boolean notified; // уже сообщили админу
+    }
+}
@@ -0,0 +1,210 @@
+package org.example;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chromium.ChromiumDriver;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+
+/**
+ * Куки авторизованной сессии на диске — чтобы после рестарта бота не проходить логин заново.
+ *
+ * Идея:
+ *  - после успешного логина снимаем ВСЕ куки браузера (CDP Network.getAllCookies — со всех доменов)
+ *  - пишем атомарно в файл с правами rw------- (там токены сессии!)
+ *  - в новом драйвере подкладываем их обратно (CDP Network.setCookies) ещё до первой навигации
+ *
+ * Без CDP (не Chromium) — откат на manage().getCookies()/addCookie() для домена целевой страницы.
+ */
+class CookieJar {
+
+    private static final Gson G = new Gson();
+    private static final java.lang.reflect.Type LIST_TYPE =
+            new TypeToken<List<Map<String, Object>>>() {
+            }.getType();
+
+    // поля CDP Network.CookieParam, которые переносим
+    private static final List<String> FIELDS =
+            List.of("name", "value", "domain", "path", "expires", "httpOnly", "secure", "sameSite");
+
+    private final File file;
+
+    CookieJar(File file) {
+        this.file = file;
+    }
+
+    boolean exists() {
+        return file.isFile() && file.length() > 0;
+    }
+
+    void delete() {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    /**
+     * Снять куки текущей сессии браузера и сохранить на диск (если они изменились с прошлого сохранения).
+     */
+    void save(WebDriver d) {
+        try {
+            List<Map<String, Object>> cookies = readCookies(d);
+            if (cookies.isEmpty()) return;
+            String json = G.toJson(cookies);
+            if (exists() && json.equals(Files.readString(file.toPath(), StandardCharsets.UTF_8))) return;
+            writeSecure(json);
+            System.out.println("🍪 Сохранено кук: " + cookies.size() + " → " + file.getAbsolutePath());
+        } catch (Exception e) {
+            System.err.println("Не удалось сохранить куки: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Подложить сохранённые (не протухшие) куки в драйвер.
+     *
+     * @return false — если восстанавливать нечего
+     */
+    boolean restore(WebDriver d, String targetUrl) {
+        List<Map<String, Object>> cookies = load();
+        if (cookies.isEmpty()) return false;
+
+        if (d instanceof ChromiumDriver cd) {
+            try {
+                cd.executeCdpCommand("Network.setCookies", Map.of("cookies", cookies));
+                return true;
+            } catch (Exception e) {
+                System.err.println("CDP Network.setCookies не сработал, пробуем addCookie: " + e.getMessage());
+            }
+        }
+
+        // addCookie работает только для домена текущей страницы — сначала открываем origin
+        d.get(originOf(targetUrl));
+        int added = 0;
+        for (Map<String, Object> c : cookies) {
+            try {
+                d.manage().addCookie(toSelenium(c));
+                added++;
+            } catch (Exception ignored) {
+                // чужой домен — пропускаем
+            }
+        }
+        return added > 0;
+    }
+
+    /* ======================= внутреннее ======================= */
+
+    private List<Map<String, Object>> load() {
+        if (!exists()) return List.of();
+        try (Reader r = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            List<Map<String, Object>> all = G.fromJson(r, LIST_TYPE);
+            if (all == null) return List.of();
+            double nowSec = System.currentTimeMillis() / 1000.0;
+            List<Map<String, Object>> alive = new ArrayList<>();
+            for (Map<String, Object> c : all) {
+                Object exp = c.get("expires");
+                // сессионные куки (без expires) берём, протухшие — нет
+                if (exp instanceof Number n && n.doubleValue() > 0 && n.doubleValue() < nowSec) continue;
+                alive.add(c);
+            }
+            return alive;
+        } catch (Exception e) {
+            System.err.println("Не удалось прочитать куки: " + e.getMessage());
+            return List.of();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> readCookies(WebDriver d) {
+        List<Map<String, Object>> out = new ArrayList<>();
+        if (d instanceof ChromiumDriver cd) {
+            try {
+                Map<String, Object> res = cd.executeCdpCommand("Network.getAllCookies", Map.of());
+                Object list = res == null ? null : res.get("cookies");
+                if (list instanceof List<?> l) {
+                    for (Object o : l) {
+                        if (o instanceof Map<?, ?> m) out.add(pick((Map<String, Object>) m));
+                    }
+                    return out;
+                }
+            } catch (Exception e) {
+                System.err.println("CDP Network.getAllCookies не сработал: " + e.getMessage());
+            }
+        }
+        for (Cookie c : d.manage().getCookies()) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("name", c.getName());
+            m.put("value", c.getValue());
+            if (c.getDomain() != null) m.put("domain", c.getDomain());
+            m.put("path", c.getPath() == null ? "/" : c.getPath());
+            if (c.getExpiry() != null) m.put("expires", c.getExpiry().getTime() / 1000.0);
+            m.put("httpOnly", c.isHttpOnly());
+            m.put("secure", c.isSecure());
+            if (c.getSameSite() != null) m.put("sameSite", c.getSameSite());
+            out.add(m);
+        }
+        return out;
+    }
+
+    private static Map<String, Object> pick(Map<String, Object> cdpCookie) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        for (String f : FIELDS) {
+            Object v = cdpCookie.get(f);
+            if (v != null) m.put(f, v);
+        }
+        // у сессионных кук CDP отдаёт expires=-1 — не переносим, пусть останутся сессионными
+        if (Boolean.TRUE.equals(cdpCookie.get("session"))) m.remove("expires");
+        return m;
+    }
+
+    private static Cookie toSelenium(Map<String, Object> c) {
+        Cookie.Builder b = new Cookie.Builder(String.valueOf(c.get("name")), String.valueOf(c.get("value")))
+                .path(c.get("path") == null ? "/" : String.valueOf(c.get("path")))
+                .isSecure(Boolean.TRUE.equals(c.get("secure")))
+                .isHttpOnly(Boolean.TRUE.equals(c.get("httpOnly")));
+        if (c.get("domain") != null) b.domain(String.valueOf(c.get("domain")));
+        if (c.get("expires") instanceof Number n && n.doubleValue() > 0) {
+            b.expiresOn(new Date((long) (n.doubleValue() * 1000)));
+        }
+        if (c.get("sameSite") != null) b.sameSite(String.valueOf(c.get("sameSite")));
+        return b.build();
+    }
+
+    /**
+     * Пишем во временный файл с правами только для владельца и атомарно подменяем.
+     */
+    private void writeSecure(String json) throws IOException {
+        Path target = file.getAbsoluteFile().toPath();
+        Path dir = target.getParent();
+        Files.createDirectories(dir);
+        Path tmp;
+        try {
+            tmp = Files.createTempFile(dir, ".cookies-", ".tmp",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            tmp = Files.createTempFile(dir, ".cookies-", ".tmp");
+        }
+        try {
+            Files.writeString(tmp, json, StandardCharsets.UTF_8);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static String originOf(String url) {
+        try {
+            URI u = new URI(url);
+            String scheme = u.getScheme() == null ? "https" : u.getScheme();
+            String p = (u.getPort() == -1 ? "" : ":" + u.getPort());
+            return scheme + "://" + u.getHost() + p + "/";
+        } catch (Exception e) {
+            return url;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.example;
+
+/**
+ * Дедлайн всего прогона (/checkjs): передаётся в каждый шаг и каждое ожидание,
+ * чтобы локальные таймауты (25 с, 30 с, 10 с «сетевой тишины»...) не выходили за общий бюджет.
+ *
+ * Пример:
+ *   Deadline dl = Deadline.in(300_000);
+ *   waitDomReady(d, dl.sec(25));         // не больше 25 с и не больше остатка бюджета
+ *   waitSpaNetworkIdle(d, dl.ms(10000), 700);
+ */
+public final class Deadline {
+
+    private final long endNanos;
+
+    private Deadline(long endNanos) {
+        this.endNanos = endNanos;
+    }
+
+    public static Deadline in(long ms) {
+        return new Deadline(System.nanoTime() + Math.max(0, ms) * 1_000_000L);
+    }
+
+    public long remainingMs() {
+        return Math.max(0, (endNanos - System.nanoTime()) / 1_000_000L);
+    }
+
+    public boolean expired() {
+        return endNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Бросает {@link Exceeded}, если бюджет кончился.
+     */
+    public void check(String what) {
+        if (expired()) throw new Exceeded("Бюджет времени исчерпан: " + what);
+    }
+
+    /**
+     * Таймаут в миллисекундах, урезанный до остатка бюджета.
+     */
+    public long ms(long ms) {
+        check("ожидание " + ms + " мс");
+        return Math.min(ms, remainingMs());
+    }
+
+    /**
+     * Таймаут в секундах (для WebDriverWait), урезанный до остатка бюджета; минимум 1 с.
+     */
+    public int sec(int sec) {
+        check("ожидание " + sec + " с");
+        long left = (remainingMs() + 999) / 1000;
+        return (int) Math.max(1, Math.min(sec, left));
+    }
+
+    /**
+     * Бюджет прогона исчерпан — не ошибка цели, а повод закончить с частичным результатом.
+     */
+    public static class Exceeded extends RuntimeException {
+        public Exceeded(String message) {
+            super(message);
+        }
+    }
+}
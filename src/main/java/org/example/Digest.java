@@ -0,0 +1,222 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Дайджест /checkjs для одного чата: вместо HTML + PNG на каждую цель и файла состояния на каждый профиль —
+ * одно сообщение-сводка и один ZIP.
+ *
+ * Идея:
+ *  - результаты целей копятся по мере прогона (HTML и текст — в памяти, скриншоты остаются во временных файлах)
+ *  - изменения из нескольких прогонов/профилей в пределах DIGEST_WINDOW_MS сливаются в один дайджест
+ *  - ZIP пишется потоком прямо в отправку ({@link #writeZip}) — без промежуточного архива на диске
+ *
+ * В архиве: &lt;цель&gt;/page.html, &lt;цель&gt;/screenshot.png, &lt;цель&gt;/diff.txt (построчный дифф текста)
+ * и файлы состояния профилей.
+ */
+final class Digest {
+
+    // построчный дифф — O(n·m) памяти; крупнее — только счётчики строк
+    private static final long MAX_DIFF_CELLS = 4_000_000L;
+    private static final int DIFF_CONTEXT = 2;
+
+    private record Item(String tag, String target, ChangeWatcher.Change change, String html,
+                        File screenshot, String previousText, Instant at) {
+    }
+
+    private final List<Item> changed = new ArrayList<>();
+    private final Map<String, Integer> unchanged = new LinkedHashMap<>();   // тег профиля → число целей
+    private final Map<String, String> skipped = new LinkedHashMap<>();      // тег + цель → причина
+    private final Map<String, File> stateFiles = new LinkedHashMap<>();     // id профиля → файл состояния
+    private final Instant opened = Instant.now();
+
+    synchronized void add(String tag, ChangeWatcher.TargetResult r) {
+        if (r.changed()) {
+            changed.add(new Item(tag, r.name(), r.change(), r.html(), r.screenshot(), r.previousText(), Instant.now()));
+        } else {
+            unchanged.merge(tag, 1, Integer::sum);
+            if (r.screenshot() != null) {
+                //noinspection ResultOfMethodCallIgnored
+                r.screenshot().delete(); // без изменений в архив не идёт
+            }
+        }
+    }
+
+    synchronized void addRun(WatchProfile p, String tag, ChangeWatcher.RunResult res) {
+        res.skippedTargets().forEach((name, reason) -> skipped.put(tag + name, reason));
+        if (p.stateFile().exists()) stateFiles.put(p.id(), p.stateFile());
+    }
+
+    synchronized boolean hasChanges() {
+        return !changed.isEmpty();
+    }
+
+    /**
+     * Сводка одним сообщением (лимит Telegram — 4096 символов; длинные списки обрезаются).
+     */
+    synchronized String summary() {
+        StringBuilder sb = new StringBuilder();
+        int same = unchanged.values().stream().mapToInt(Integer::intValue).sum();
+        if (changed.isEmpty()) {
+            sb.append("✓ Изменений нет (проверено целей: ").append(same).append(")\n");
+        } else {
+            sb.append("🔔 Изменения в ").append(changed.size()).append(" ")
+                    .append(plural(changed.size(), "цели", "целях", "целях")).append(":\n");
+            for (Item it : changed) sb.append("• ").append(it.tag).append(it.target).append("\n");
+            if (same > 0) sb.append("✓ Без изменений: ").append(same).append("\n");
+        }
+        if (!skipped.isEmpty()) {
+            sb.append("⏸ Пропущены:\n");
+            skipped.forEach((name, reason) -> sb.append("• ").append(name).append(" — ").append(reason).append("\n"));
+        }
+        String s = sb.toString().strip();
+        return s.length() > 4000 ? s.substring(0, 4000) + "\n…" : s;
+    }
+
+    String fileName() {
+        return "checkjs-digest-" + opened.toString().replaceAll("[^0-9T]", "").substring(0, 15) + ".zip";
+    }
+
+    /**
+     * Записать архив в поток (поток закрывается). Скриншоты и файлы состояния копируются с диска напрямую.
+     */
+    synchronized void writeZip(OutputStream out) throws IOException {
+        Set<String> used = new HashSet<>();
+        try (ZipOutputStream zos = new ZipOutputStream(out, StandardCharsets.UTF_8)) {
+            for (Item it : changed) {
+                String dir = unique(used, safeName(it.tag + it.target)) + "/";
+                if (it.html != null && !it.html.isBlank()) {
+                    entry(zos, dir + "page.html", it.html.getBytes(StandardCharsets.UTF_8));
+                }
+                if (it.screenshot != null && it.screenshot.isFile()) {
+                    zos.putNextEntry(new ZipEntry(dir + "screenshot.png"));
+                    Files.copy(it.screenshot.toPath(), zos);
+                    zos.closeEntry();
+                }
+                entry(zos, dir + "diff.txt", diffText(it).getBytes(StandardCharsets.UTF_8));
+            }
+            for (File f : stateFiles.values()) {
+                if (!f.isFile()) continue;
+                zos.putNextEntry(new ZipEntry(f.getName()));
+                Files.copy(f.toPath(), zos);
+                zos.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Удалить временные скриншоты — после отправки (или неудачи).
+     */
+    synchronized void cleanup() {
+        for (Item it : changed) {
+            if (it.screenshot != null) {
+                //noinspection ResultOfMethodCallIgnored
+                it.screenshot.delete();
+            }
+        }
+    }
+
+    /* ======================= дифф ======================= */
+
+    private static String diffText(Item it) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Цель: ").append(it.tag).append(it.target).append("\n");
+        sb.append("Обнаружено: ").append(it.at).append("\n");
+        sb.append("Хеш: ").append(it.change.prevHash() == null ? "—" : it.change.prevHash())
+                .append(" → ").append(it.change.newHash()).append("\n\n");
+        if (it.previousText == null) {
+            sb.append("(прежнего текста нет — первая проверка цели)\n\n").append(it.change.newText());
+        } else {
+            sb.append(diff(it.previousText, it.change.newText()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Построчный дифф (LCS) в духе unified: «-» удалено, «+» добавлено, вокруг — DIFF_CONTEXT строк контекста.
+     */
+    static String diff(String before, String after) {
+        String[] a = lines(before);
+        String[] b = lines(after);
+        // общие начало и конец отрезаем сразу — обычно меняется малая часть страницы
+        int head = 0;
+        while (head < a.length && head < b.length && a[head].equals(b[head])) head++;
+        int tail = 0;
+        while (tail < a.length - head && tail < b.length - head
+                && a[a.length - 1 - tail].equals(b[b.length - 1 - tail])) tail++;
+        int n = a.length - head - tail;
+        int m = b.length - head - tail;
+        if (n == 0 && m == 0) return "(текст не изменился — отличается только разметка)\n";
+        if ((long) (n + 1) * (m + 1) > MAX_DIFF_CELLS) {
+            return "(изменение слишком велико для построчного диффа: было " + a.length
+                    + " строк, стало " + b.length + ")\n";
+        }
+
+        int[][] lcs = new int[n + 1][m + 1];
+        for (int i = n - 1; i >= 0; i--) {
+            for (int j = m - 1; j >= 0; j--) {
+                lcs[i][j] = a[head + i].equals(b[head + j])
+                        ? lcs[i + 1][j + 1] + 1
+                        : Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int k = Math.max(0, head - DIFF_CONTEXT); k < head; k++) sb.append("  ").append(a[k]).append("\n");
+        int i = 0, j = 0;
+        while (i < n || j < m) {
+            if (i < n && j < m && a[head + i].equals(b[head + j])) {
+                sb.append("  ").append(a[head + i]).append("\n");
+                i++;
+                j++;
+            } else if (i < n && (j == m || lcs[i + 1][j] >= lcs[i][j + 1])) {
+                sb.append("- ").append(a[head + i++]).append("\n");
+            } else {
+                sb.append("+ ").append(b[head + j++]).append("\n");
+            }
+        }
+        for (int k = a.length - tail; k < Math.min(a.length, a.length - tail + DIFF_CONTEXT); k++) {
+            sb.append("  ").append(a[k]).append("\n");
+        }
+        return sb.toString();
+    }
+
+    private static String[] lines(String s) {
+        return s == null || s.isEmpty() ? new String[0] : s.split("\n", -1);
+    }
+
+    /* ======================= helpers ======================= */
+
+    private static void entry(ZipOutputStream zos, String name, byte[] content) throws IOException {
+        zos.putNextEntry(new ZipEntry(name));
+        zos.write(content);
+        zos.closeEntry();
+    }
+
+    private static String unique(Set<String> used, String name) {
+        String n = name;
+        for (int i = 2; !used.add(n); i++) n = name + "-" + i;
+        return n;
+    }
+
+    private static String safeName(String s) {
+        String n = s.replaceAll("[\\\\/:*?\"<>|\\s]+", "_").replaceAll("^_+|_+$", "");
+        if (n.isEmpty()) n = "target";
+        return n.length() > 80 ? n.substring(0, 80) : n;
+    }
+
+    private static String plural(int n, String one, String few, String many) {
+        int mod10 = n % 10, mod100 = n % 100;
+        if (mod10 == 1 && mod100 != 11) return one;
+        if (mod10 >= 2 && mod10 <= 4 && (mod100 < 12 || mod100 > 14)) return few;
+        return many;
+    }
+}
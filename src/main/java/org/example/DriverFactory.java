@@ -0,0 +1,292 @@
+package org.example;
+
+import com.google.gson.Gson;
+import io.github.bonigarcia.wdm.WebDriverManager;
+import org.openqa.selenium.HasCapabilities;
+import org.openqa.selenium.SessionNotCreatedException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+import java.io.*;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Создание Chrome-драйверов.
+ *
+ * Разрешение chromedriver (WebDriverManager: определение версии Chrome, иногда поход в сеть)
+ * делается ОДИН раз на процесс и кэшируется в файл вместе с версией браузера:
+ *  - CHROMEDRIVER_PATH — готовый бинарник, WebDriverManager не вызывается вообще (полностью offline)
+ *  - иначе берём путь из кэша (.chromedriver-cache.json), пока драйвер на месте
+ *  - кэша нет / Chrome обновился и сессия не создаётся — один раз WebDriverManager, кэш переписываем
+ *
+ * Удалённые браузеры: SELENIUM_GRID_URLS="http://node1:4444,http://node2:4444" — драйверы создаются
+ * как RemoteWebDriver на наименее загруженном endpoint (по числу наших живых сессий); endpoint недоступен —
+ * пробуем следующий. Для проверки хватит локального Grid: java -jar selenium-server-4.23.0.jar standalone
+ *
+ * Все созданные драйверы регистрируются: закрываем их через {@link #quit(WebDriver)},
+ * а забытые/осиротевшие добивает {@link BrowserWatchdog}.
+ */
+class DriverFactory {
+
+    private static final String CHROMEDRIVER_PATH = getenvOrDefault("CHROMEDRIVER_PATH", "");
+    private static final File CACHE_FILE = new File(getenvOrDefault("CHROMEDRIVER_CACHE_FILE",
+            new File(System.getProperty("user.dir"), ".chromedriver-cache.json").getPath()));
+
+    // Selenium Grid endpoints через запятую; пусто — локальный ChromeDriver
+    private static final List<String> GRID_URLS = parseList(getenvOrDefault("SELENIUM_GRID_URLS", ""));
+
+    private static final String DRIVER_PROPERTY = "webdriver.chrome.driver";
+    private static final Gson G = new Gson();
+
+    private static volatile Resolution resolved;
+
+    // все живые драйверы процесса → когда и где созданы
+    private static final Map<WebDriver, Live> LIVE = new ConcurrentHashMap<>();
+
+    // для равномерного выбора среди одинаково загруженных endpoint'ов
+    private static final AtomicInteger GRID_CURSOR = new AtomicInteger();
+
+    private DriverFactory() {
+    }
+
+    /**
+     * Разрешить chromedriver заранее (при старте бота); повторные вызовы бесплатны.
+     */
+    static synchronized Resolution resolve() {
+        if (resolved != null) return resolved;
+        long t0 = System.currentTimeMillis();
+
+        Resolution r;
+        if (!CHROMEDRIVER_PATH.isBlank()) {
+            if (!new File(CHROMEDRIVER_PATH).canExecute()) {
+                throw new IllegalStateException("CHROMEDRIVER_PATH не найден или не исполняемый: " + CHROMEDRIVER_PATH);
+            }
+            r = new Resolution(CHROMEDRIVER_PATH, null, null, "env");
+        } else {
+            r = loadCache();
+            if (r == null) r = resolveWithManager();
+        }
+        System.setProperty(DRIVER_PROPERTY, r.driverPath());
+        resolved = r;
+        System.out.println("🧩 chromedriver: " + r.driverPath() + " (" + r.source() + ", "
+                + (System.currentTimeMillis() - t0) + " мс)");
+        return r;
+    }
+
+    /**
+     * Новый Chrome с нашими стандартными опциями: на Selenium Grid, если он задан, иначе локально.
+     */
+    static WebDriver newChrome(boolean headless, String userAgent) {
+        if (!GRID_URLS.isEmpty()) return newRemoteChrome(chromeOptions(headless, userAgent));
+        Resolution r = resolve();
+        ChromeOptions opts = chromeOptions(headless, userAgent);
+        WebDriver d;
+        try {
+            d = new ChromeDriver(opts);
+        } catch (SessionNotCreatedException e) {
+            // чаще всего — Chrome обновился, а закэшированный chromedriver старый
+            if (!"cache".equals(r.source())) throw e;
+            System.err.println("chromedriver из кэша не подошёл (" + e.getMessage() + ") — разрешаем заново");
+            Metrics.inc("watcher_retries_total", "reason", "chromedriver");
+            invalidate();
+            resolve();
+            d = new ChromeDriver(opts);
+        }
+        rememberBrowserVersion(d);
+        LIVE.put(d, new Live(System.currentTimeMillis(), null));
+        return d;
+    }
+
+    /**
+     * RemoteWebDriver на наименее загруженном endpoint'е; при ошибке — следующий по очереди.
+     */
+    private static WebDriver newRemoteChrome(ChromeOptions opts) {
+        List<String> order = gridOrder();
+        WebDriverException last = null;
+        for (String endpoint : order) {
+            try {
+                WebDriver d = new RemoteWebDriver(new URL(endpoint), opts);
+                LIVE.put(d, new Live(System.currentTimeMillis(), endpoint));
+                System.out.println("🌐 Браузер на Grid: " + endpoint);
+                return d;
+            } catch (WebDriverException e) {
+                System.err.println("Grid " + endpoint + " не дал сессию: " + e.getMessage());
+                Metrics.inc("watcher_retries_total", "reason", "grid");
+                last = e;
+            } catch (MalformedURLException e) {
+                System.err.println("Некорректный адрес Grid: " + endpoint);
+            }
+        }
+        throw new IllegalStateException("Ни один Selenium Grid не дал сессию: " + GRID_URLS, last);
+    }
+
+    /**
+     * Endpoint'ы по возрастанию числа наших живых сессий; при равенстве — по кругу.
+     */
+    private static List<String> gridOrder() {
+        int n = GRID_URLS.size();
+        int start = Math.floorMod(GRID_CURSOR.getAndIncrement(), n);
+        List<String> order = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) order.add(GRID_URLS.get((start + i) % n));
+        Map<String, Integer> load = new HashMap<>();
+        for (Live l : LIVE.values()) {
+            if (l.endpoint() != null) load.merge(l.endpoint(), 1, Integer::sum);
+        }
+        order.sort(Comparator.comparingInt(e -> load.getOrDefault(e, 0))); // сортировка стабильная
+        return order;
+    }
+
+    /**
+     * Закрыть драйвер и убрать из реестра (ошибки глотаем — браузер мог уже умереть).
+     */
+    static void quit(WebDriver d) {
+        if (d == null) return;
+        LIVE.remove(d);
+        try {
+            d.quit();
+        } catch (Throwable ignored) {
+        }
+    }
+
+    /**
+     * Закрыть все зарегистрированные драйверы, кроме keep и созданных позже, чем minAgeMs назад
+     * (их прямо сейчас может использовать, например, /render).
+     *
+     * @return сколько закрыли
+     */
+    static int quitAllExcept(WebDriver keep, long minAgeMs) {
+        long now = System.currentTimeMillis();
+        int n = 0;
+        for (Map.Entry<WebDriver, Live> e : new ArrayList<>(LIVE.entrySet())) {
+            if (e.getKey() == keep || now - e.getValue().createdAt() < minAgeMs) continue;
+            quit(e.getKey());
+            n++;
+        }
+        return n;
+    }
+
+    static boolean usesGrid() {
+        return !GRID_URLS.isEmpty();
+    }
+
+    static ChromeOptions chromeOptions(boolean headless, String userAgent) {
+        ChromeOptions opts = new ChromeOptions();
+        if (headless) opts.addArguments("--headless=new");
+        opts.addArguments(
+                "--no-sandbox", "--disable-dev-shm-usage", "--disable-gpu",
+                "--window-size=1366,3000", "--lang=ru-RU", "--disable-blink-features=AutomationControlled",
+                "--user-agent=" + userAgent
+        );
+        opts.setExperimentalOption("excludeSwitches", List.of("enable-automation"));
+        opts.setExperimentalOption("useAutomationExtension", false);
+        return opts;
+    }
+
+    /* ======================= кэш разрешения ======================= */
+
+    private static Resolution resolveWithManager() {
+        WebDriverManager wdm = WebDriverManager.chromedriver();
+        wdm.setup();
+        String path = wdm.getDownloadedDriverPath();
+        if (path == null || path.isBlank()) path = System.getProperty(DRIVER_PROPERTY);
+        Resolution r = new Resolution(path, wdm.getDownloadedDriverVersion(), null, "webdrivermanager");
+        saveCache(r);
+        return r;
+    }
+
+    private static Resolution loadCache() {
+        if (!CACHE_FILE.isFile()) return null;
+        try (Reader rd = new InputStreamReader(new FileInputStream(CACHE_FILE), StandardCharsets.UTF_8)) {
+            Resolution r = G.fromJson(rd, Resolution.class);
+            if (r == null || r.driverPath() == null || !new File(r.driverPath()).canExecute()) return null;
+            return new Resolution(r.driverPath(), r.driverVersion(), r.browserVersion(), "cache");
+        } catch (Exception e) {
+            System.err.println("Кэш chromedriver не читается: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void saveCache(Resolution r) {
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(CACHE_FILE), StandardCharsets.UTF_8)) {
+            G.toJson(new CacheEntry(r.driverPath(), r.driverVersion(), r.browserVersion(), Instant.now().toString()), w);
+        } catch (Exception e) {
+            System.err.println("Не удалось записать кэш chromedriver: " + e.getMessage());
+        }
+    }
+
+    private static synchronized void invalidate() {
+        //noinspection ResultOfMethodCallIgnored
+        CACHE_FILE.delete();
+        System.clearProperty(DRIVER_PROPERTY);
+        resolved = null;
+    }
+
+    /**
+     * Запоминаем версию Chrome, с которой драйвер реально поднялся; сменилась мажорная — кэш больше не доверяем:
+     * файл кэша удаляется, следующий драйвер разрешается через WebDriverManager под новый Chrome.
+     */
+    private static synchronized void rememberBrowserVersion(WebDriver d) {
+        Resolution r = resolved;
+        if (r == null || "env".equals(r.source()) || !(d instanceof HasCapabilities hc)) return;
+        String version;
+        try {
+            version = hc.getCapabilities().getBrowserVersion();
+        } catch (Exception e) {
+            return;
+        }
+        if (version == null || version.equals(r.browserVersion())) return;
+        if (r.browserVersion() != null && !major(version).equals(major(r.browserVersion()))) {
+            System.out.println("Chrome обновился: " + r.browserVersion() + " → " + version
+                    + " — кэш chromedriver сброшен, следующий драйвер разрешим заново");
+            // этот драйвер уже поднялся — его не трогаем; старый chromedriver может не пережить следующего обновления
+            invalidate();
+            return;
+        }
+        resolved = new Resolution(r.driverPath(), r.driverVersion(), version, r.source());
+        saveCache(resolved);
+    }
+
+    private static String major(String version) {
+        int dot = version.indexOf('.');
+        return dot < 0 ? version : version.substring(0, dot);
+    }
+
+    private static List<String> parseList(String csv) {
+        List<String> out = new ArrayList<>();
+        for (String p : csv.split(",")) {
+            String s = p.trim();
+            if (!s.isEmpty()) out.add(s);
+        }
+        return out;
+    }
+
+    private static String getenvOrDefault(String key, String def) {
+        String v = System.getenv(key);
+        return (v == null || v.isBlank()) ? def : v;
+    }
+
+    /**
+     * Итог разрешения: путь к chromedriver, его версия, версия Chrome и откуда взяли (env / cache / webdrivermanager).
+     */
+    record Resolution(String driverPath, String driverVersion, String browserVersion, String source) {
+    }
+
+    private record Live(long createdAt, String endpoint) {
+    }
+
+    private record CacheEntry(String driverPath, String driverVersion, String browserVersion, String resolvedAt) {
+    }
+}
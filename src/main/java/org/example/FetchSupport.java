@@ -0,0 +1,67 @@
+package org.example;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.select.Elements;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Чистые (без сети и ENV) помощники пути /check, /why, /html: разбор кук, сводка заголовков,
+ * выбор контента по селектору и хэш. Вынесены из BotWatcher, чтобы их можно было
+ * вызывать и мерить (src/jmh) без токена бота в окружении.
+ */
+final class FetchSupport {
+
+    private FetchSupport() {
+    }
+
+    /**
+     * HTML по селектору; селектор не задан или ничего не нашёл — вся страница.
+     */
+    static String selectContent(Document doc, String selector) {
+        if (selector != null && !selector.isBlank()) {
+            Elements els = doc.select(selector);
+            if (!els.isEmpty()) return els.outerHtml();
+        }
+        return doc.outerHtml();
+    }
+
+    static String sha256(String s) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest((s == null ? "" : s).getBytes(StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    static Map<String, String> parseCookieHeader(String cookieHeader) {
+        Map<String, String> map = new LinkedHashMap<>();
+        if (cookieHeader == null || cookieHeader.isBlank()) return map;
+        for (String p : cookieHeader.split(";")) {
+            String s = p.trim();
+            int eq = s.indexOf('=');
+            if (eq > 0) {
+                String name = s.substring(0, eq).trim();
+                String val  = s.substring(eq + 1).trim();
+                if (!name.isEmpty()) map.put(name, val);
+            }
+        }
+        return map;
+    }
+
+    static String summarizeHeaders(Map<String,String> h) {
+        if (h == null || h.isEmpty()) return "(none)";
+        StringBuilder sb = new StringBuilder();
+        int n = 0;
+        for (var e : h.entrySet()) {
+            if (n++ >= 12) { sb.append(" ..."); break; }
+            sb.append(e.getKey()).append(": ").append(first(e.getValue(), 120)).append("\n");
+        }
+        return sb.toString();
+    }
+
+    static String first(String s, int n) { if (s == null) return ""; return s.length() <= n ? s : s.substring(0, n) + "..."; }
+}
@@ -0,0 +1,157 @@
+package org.example;
+
+import jdk.jfr.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Duration;
+
+/**
+ * Свои события Java Flight Recorder — чтобы разобрать медленный прогон прямо на боевой машине, без профайлера.
+ *
+ * События (категория "Watcher"):
+ *  - Step — шаг сценария: цель, тип, аргумент, исход
+ *  - Script — один round trip executeScript: цель, начало скрипта, типы аргументов (не значения)
+ *  - StateIo — чтение/слияние файла состояния
+ *  - TelegramCall — вызов client.execute: метод, чат, исход
+ *
+ * События пишутся, только пока идёт запись (иначе commit() почти бесплатен).
+ * Запись включает/выключает админ командой /jfr start|stop, файл .jfr уходит в чат —
+ * поэтому события JDK с окружением и системными свойствами процесса (BOT_TOKEN, пароли) в неё не пишутся.
+ */
+final class JfrEvents {
+
+    // цель, которую сейчас проверяет поток (для полей событий)
+    private static final ThreadLocal<String> TARGET = new ThreadLocal<>();
+
+    private static Recording recording;
+
+    private JfrEvents() {
+    }
+
+    static void setTarget(String target) {
+        if (target == null) TARGET.remove();
+        else TARGET.set(target);
+    }
+
+    static String target() {
+        String t = TARGET.get();
+        return t == null ? "" : t;
+    }
+
+    /* ======================= запись ======================= */
+
+    // события профиля JDK, в которых значения переменных окружения и -D — то есть токены и пароли
+    private static final java.util.List<String> SECRET_EVENTS = java.util.List.of(
+            "jdk.InitialEnvironmentVariable", "jdk.InitialSystemProperty");
+
+    /**
+     * Начать запись: профиль JDK "profile" без {@link #SECRET_EVENTS} + наши события с порогом 0.
+     *
+     * @return false — запись уже идёт
+     */
+    static synchronized boolean start() throws Exception {
+        if (recording != null) return false;
+        Recording r = new Recording(Configuration.getConfiguration("profile"));
+        for (Class<? extends Event> c : java.util.List.of(StepEvent.class, ScriptEvent.class,
+                StateIoEvent.class, TelegramCallEvent.class)) {
+            r.enable(c).withThreshold(Duration.ZERO);
+        }
+        for (String name : SECRET_EVENTS) r.disable(name);
+        r.setName("watcher");
+        r.setToDisk(true);
+        r.setMaxAge(Duration.ofHours(1)); // забытая запись не съест диск
+        r.start();
+        recording = r;
+        return true;
+    }
+
+    /**
+     * Остановить запись и выгрузить во временный файл.
+     *
+     * @return файл .jfr или null, если запись не шла
+     */
+    static synchronized File stop() throws Exception {
+        if (recording == null) return null;
+        Recording r = recording;
+        recording = null;
+        try {
+            r.stop();
+            File out = File.createTempFile("watcher-", ".jfr");
+            r.dump(out.toPath());
+            return out;
+        } finally {
+            r.close();
+        }
+    }
+
+    static synchronized boolean recording() {
+        return recording != null;
+    }
+
+    static String describe(File jfr) {
+        try {
+            return jfr.getName() + ", " + (Files.size(jfr.toPath()) / 1024) + " КБ";
+        } catch (Exception e) {
+            return jfr.getName();
+        }
+    }
+
+    /* ======================= события ======================= */
+
+    @Name("org.example.Step")
+    @Label("Scenario Step")
+    @Category("Watcher")
+    @StackTrace(false)
+    static class StepEvent extends Event {
+        @Label("Target")
+        String target;
+        @Label("Type")
+        String type;
+        @Label("Argument")
+        String arg;
+        @Label("Outcome")
+        String outcome;
+    }
+
+    @Name("org.example.Script")
+    @Label("executeScript")
+    @Category("Watcher")
+    @StackTrace(false)
+    static class ScriptEvent extends Event {
+        @Label("Target")
+        String target;
+        @Label("Script")
+        String script;
+        @Label("Argument Types")
+        String args;
+    }
+
+    @Name("org.example.StateIo")
+    @Label("State I/O")
+    @Category("Watcher")
+    @StackTrace(false)
+    static class StateIoEvent extends Event {
+        @Label("Operation")
+        String operation;
+        @Label("File")
+        String file;
+        @Label("Targets")
+        int targets;
+    }
+
+    @Name("org.example.TelegramCall")
+    @Label("Telegram Call")
+    @Category("Watcher")
+    @StackTrace(false)
+    static class TelegramCallEvent extends Event {
+        @Label("Method")
+        String method;
+        @Label("Chat Id")
+        long chatId;
+        @Label("Success")
+        boolean success;
+        @Label("Error")
+        String error;
+    }
+}
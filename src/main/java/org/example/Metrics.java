@@ -0,0 +1,244 @@
+package org.example;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики процесса без внешних библиотек.
+ *
+ * Идея:
+ *  - гистограммы времени (секунды, фиксированные бакеты) и счётчики, с метками
+ *  - METRICS_PORT задан — встроенный JDK HttpServer отдаёт их на /metrics в текстовом формате Prometheus
+ *  - для бота — короткая сводка (count / среднее / p50 / p95 по бакетам), команда /metrics
+ *
+ * Метки — пары "имя", "значение"; имена целей в метках допустимы (их единицы).
+ */
+final class Metrics {
+
+    private static final int PORT = Integer.parseInt(getenvOrDefault("METRICS_PORT", "0"));
+    private static final String BIND = getenvOrDefault("METRICS_BIND", "0.0.0.0");
+
+    // верхние границы бакетов, секунды
+    private static final double[] BUCKETS = {0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120};
+
+    private static final Map<String, String> HELP = Map.ofEntries(
+            Map.entry("watcher_step_seconds", "Время одного шага сценария по типу шага"),
+            Map.entry("watcher_target_seconds", "Время полного сценария цели"),
+            Map.entry("watcher_spa_idle_seconds", "Ожидание сетевой тишины SPA"),
+            Map.entry("watcher_login_seconds", "Получение авторизованного браузера (куки или пароль)"),
+            Map.entry("watcher_screenshot_seconds", "Снятие скриншота страницы"),
+            Map.entry("watcher_telegram_seconds", "Вызов Telegram Bot API"),
+            Map.entry("watcher_changes_total", "Обнаруженные изменения по целям"),
+            Map.entry("watcher_history_seconds", "Журнал изменений: дозапись и запросы /history"),
+            Map.entry("watcher_flaps_suppressed_total", "Возвраты к недавнему хешу, не засчитанные изменением (ждут подтверждения)"),
+            Map.entry("watcher_target_failures_total", "Падения целей"),
+            Map.entry("watcher_retries_total", "Повторы (перелогин, пересоздание драйвера, другой Grid)"),
+            Map.entry("watcher_telegram_errors_total", "Ошибки вызовов Telegram Bot API"),
+            Map.entry("watcher_webhook_updates_total", "Апдейты, пришедшие через webhook, по исходу"),
+            Map.entry("watcher_webhook_queue_seconds", "Ожидание апдейта webhook в очереди до обработки")
+    );
+
+    // имя метрики → (метки в формате Prometheus → значение)
+    private static final Map<String, Map<String, Histogram>> HISTOGRAMS = new ConcurrentHashMap<>();
+    private static final Map<String, Map<String, LongAdder>> COUNTERS = new ConcurrentHashMap<>();
+
+    private static HttpServer server;
+
+    private Metrics() {
+    }
+
+    /**
+     * Записать длительность, начатую в startNanos (System.nanoTime()).
+     */
+    static void observe(String name, long startNanos, String... labels) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        HISTOGRAMS.computeIfAbsent(name, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(labels(labels), k -> new Histogram())
+                .add(seconds);
+    }
+
+    static void inc(String name, String... labels) {
+        COUNTERS.computeIfAbsent(name, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(labels(labels), k -> new LongAdder())
+                .increment();
+    }
+
+    /**
+     * Поднять HTTP-эндпоинт /metrics, если задан METRICS_PORT.
+     */
+    static synchronized void startServer() {
+        if (PORT <= 0 || server != null) return;
+        try {
+            server = HttpServer.create(new InetSocketAddress(BIND, PORT), 0);
+            server.createContext("/metrics", ex -> {
+                byte[] body = prometheus().getBytes(StandardCharsets.UTF_8);
+                ex.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                ex.sendResponseHeaders(200, body.length);
+                try (OutputStream os = ex.getResponseBody()) {
+                    os.write(body);
+                }
+            });
+            server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "metrics-http");
+                t.setDaemon(true);
+                return t;
+            }));
+            server.start();
+            System.out.println("📈 Метрики: http://" + BIND + ":" + PORT + "/metrics");
+        } catch (IOException e) {
+            System.err.println("Эндпоинт метрик не поднят: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Текстовый формат Prometheus (exposition format 0.0.4).
+     */
+    static String prometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        for (String name : new TreeSet<>(HISTOGRAMS.keySet())) {
+            header(sb, name, "histogram");
+            for (Map.Entry<String, Histogram> e : new TreeMap<>(HISTOGRAMS.get(name)).entrySet()) {
+                Histogram h = e.getValue();
+                long cumulative = 0;
+                for (int i = 0; i <= BUCKETS.length; i++) {
+                    cumulative += h.counts.get(i);
+                    String le = i < BUCKETS.length ? trimDouble(BUCKETS[i]) : "+Inf";
+                    sb.append(name).append("_bucket").append(withLabel(e.getKey(), "le", le))
+                            .append(' ').append(cumulative).append('\n');
+                }
+                sb.append(name).append("_sum").append(e.getKey()).append(' ').append(h.sum.sum()).append('\n');
+                sb.append(name).append("_count").append(e.getKey()).append(' ').append(cumulative).append('\n');
+            }
+        }
+        for (String name : new TreeSet<>(COUNTERS.keySet())) {
+            header(sb, name, "counter");
+            for (Map.Entry<String, LongAdder> e : new TreeMap<>(COUNTERS.get(name)).entrySet()) {
+                sb.append(name).append(e.getKey()).append(' ').append(e.getValue().sum()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Короткая сводка для Telegram.
+     */
+    static String summary() {
+        if (HISTOGRAMS.isEmpty() && COUNTERS.isEmpty()) return "📈 Метрик пока нет — ещё не было прогонов.";
+        StringBuilder sb = new StringBuilder("📈 Метрики (n / ср. / p50 / p95, с):\n");
+        for (String name : new TreeSet<>(HISTOGRAMS.keySet())) {
+            for (Map.Entry<String, Histogram> e : new TreeMap<>(HISTOGRAMS.get(name)).entrySet()) {
+                Histogram h = e.getValue();
+                long n = h.count();
+                if (n == 0) continue;
+                sb.append("• ").append(name.replace("watcher_", "").replace("_seconds", ""))
+                        .append(e.getKey()).append(": ")
+                        .append(n).append(" / ")
+                        .append(String.format(Locale.ROOT, "%.2f", h.sum.sum() / n)).append(" / ")
+                        .append(fmtBound(h.quantile(0.5))).append(" / ")
+                        .append(fmtBound(h.quantile(0.95))).append('\n');
+            }
+        }
+        for (String name : new TreeSet<>(COUNTERS.keySet())) {
+            for (Map.Entry<String, LongAdder> e : new TreeMap<>(COUNTERS.get(name)).entrySet()) {
+                sb.append("• ").append(name.replace("watcher_", "")).append(e.getKey())
+                        .append(" = ").append(e.getValue().sum()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Счётчик и сумма (секунды) гистограммы по каждому набору меток — для отчётов бенчмарков.
+     */
+    static Map<String, double[]> totals(String name) {
+        Map<String, double[]> out = new TreeMap<>();
+        Map<String, Histogram> byLabels = HISTOGRAMS.get(name);
+        if (byLabels == null) return out;
+        for (Map.Entry<String, Histogram> e : byLabels.entrySet()) {
+            out.put(e.getKey(), new double[]{e.getValue().count(), e.getValue().sum.sum()});
+        }
+        return out;
+    }
+
+    /* ======================= внутреннее ======================= */
+
+    private static void header(StringBuilder sb, String name, String type) {
+        String help = HELP.get(name);
+        if (help != null) sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String labels(String... kv) {
+        if (kv.length == 0) return "";
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i + 1 < kv.length; i += 2) {
+            if (i > 0) sb.append(',');
+            sb.append(kv[i]).append("=\"").append(escape(kv[i + 1])).append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String withLabel(String labels, String name, String value) {
+        String pair = name + "=\"" + value + "\"";
+        return labels.isEmpty() ? "{" + pair + "}" : labels.substring(0, labels.length() - 1) + "," + pair + "}";
+    }
+
+    private static String escape(String v) {
+        return String.valueOf(v).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String trimDouble(double d) {
+        return d == Math.rint(d) ? String.valueOf((long) d) : String.valueOf(d);
+    }
+
+    private static String fmtBound(double b) {
+        return Double.isInfinite(b) ? ">" + trimDouble(BUCKETS[BUCKETS.length - 1]) : "≤" + trimDouble(b);
+    }
+
+    private static String getenvOrDefault(String key, String def) {
+        String v = System.getenv(key);
+        return (v == null || v.isBlank()) ? def : v;
+    }
+
+    private static final class Histogram {
+        final AtomicLongArray counts = new AtomicLongArray(BUCKETS.length + 1);
+        final DoubleAdder sum = new DoubleAdder();
+
+        void add(double seconds) {
+            int i = 0;
+            while (i < BUCKETS.length && seconds > BUCKETS[i]) i++;
+            counts.incrementAndGet(i);
+            sum.add(seconds);
+        }
+
+        long count() {
+            long n = 0;
+            for (int i = 0; i < counts.length(); i++) n += counts.get(i);
+            return n;
+        }
+
+        /**
+         * Верхняя граница бакета, в который попадает квантиль (точнее по бакетам не знаем).
+         */
+        double quantile(double q) {
+            long n = count();
+            long rank = (long) Math.ceil(q * n);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) return BUCKETS[i];
+            }
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package org.example;
+
+import com.google.gson.*;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.devtools.NetworkInterceptor;
+import org.openqa.selenium.remote.http.Contents;
+import org.openqa.selenium.remote.http.Filter;
+import org.openqa.selenium.remote.http.HttpHandler;
+import org.openqa.selenium.remote.http.HttpRequest;
+import org.openqa.selenium.remote.http.HttpResponse;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Запись и воспроизведение сетевых ответов сценария цели — чтобы гонять правки сценариев и ожиданий
+ * на реальных страницах без живого сайта и без сетевого шума в замерах.
+ *
+ * Идея:
+ *  - NETWORK_TAPE=record: во время сценария цели каждый ответ (URL, статус, заголовки, тело) пишется
+ *    через перехват запросов DevTools; после успешного сценария — в «кассету» NETWORK_TAPE_DIR/цель.har (HAR 1.2)
+ *  - NETWORK_TAPE=replay: браузер в сеть не ходит вовсе — ответы берутся из кассеты;
+ *    повторы одного URL отдаются по порядку записи (последний повторяется), не найден точный URL — ищем без query
+ *  - нет кассеты или запроса в ней — 404 и счётчик промахов в логе
+ *  - кассета — снимок залогиненной сессии: Set-Cookie и заголовки авторизации в неё не пишутся,
+ *    значения токенов в query (code, token, state…), в JSON-полях (token, csrf, password…) и JWT в текстовых
+ *    ответах заменяются на REDACTED; всё остальное — данные учётки (имя, прогресс, ответы API) — остаётся как есть,
+ *    поэтому кассеты и их папка доступны только владельцу (как и банка кук, {@link CookieJar}) и не для репозитория
+ *
+ * Нужен Chromium с DevTools (локальный ChromeDriver); для других драйверов запись/воспроизведение пропускаются.
+ */
+final class NetworkTape {
+
+    enum Mode {OFF, RECORD, REPLAY}
+
+    static final Mode MODE = parseMode(getenvOrDefault("NETWORK_TAPE", "off"));
+
+    private static final File DIR = new File(getenvOrDefault("NETWORK_TAPE_DIR",
+            new File(System.getProperty("user.dir"), "network-tapes").getPath()));
+
+    // тело уже распаковано DevTools — эти заголовки при воспроизведении врали бы
+    private static final Set<String> SKIP_HEADERS = Set.of("content-encoding", "content-length", "transfer-encoding");
+    // сессионные куки и токены — кассета не должна давать доступ к учётке
+    private static final Set<String> SECRET_HEADERS = Set.of("set-cookie", "set-cookie2", "cookie",
+            "authorization", "proxy-authorization", "x-csrftoken", "x-csrf-token", "x-xsrf-token");
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+
+    private static final Gson COMPACT = new GsonBuilder().disableHtmlEscaping().create();
+
+    static final String REDACTED = "REDACTED";
+    // имена JSON-полей с секретами (целиком или как часть имени: access_token, csrfToken)
+    private static final Pattern SECRET_FIELD = Pattern.compile(
+            "(?i).*(token|secret|passw|csrf|xsrf|jwt|sessionid|session_id|api[_-]?key|signature|cookie).*|auth|authorization");
+    // в query вдобавок — одноразовые коды и подписи OAuth/SSO (в JSON такие имена обычно значат другое)
+    private static final Pattern SECRET_PARAM = Pattern.compile("(?i)code|state|sig|key|ticket|" + SECRET_FIELD.pattern());
+    // JWT где угодно в тексте: header.payload.signature в base64url
+    private static final Pattern JWT = Pattern.compile("eyJ[A-Za-z0-9_-]{5,}\\.eyJ[A-Za-z0-9_-]{5,}\\.[A-Za-z0-9_-]+");
+    private static final Pattern QUERY_PARAM = Pattern.compile("([?&])([^=&#]+)=([^&#]*)");
+
+    private NetworkTape() {
+    }
+
+    static boolean enabled() {
+        return MODE != Mode.OFF;
+    }
+
+    /**
+     * Подключить кассету цели к драйверу на время сценария.
+     *
+     * @param key имя цели (с профилем, см. {@link WatchProfile#leaseKey})
+     */
+    static Session attach(WebDriver d, String key) {
+        if (MODE == Mode.OFF) return Session.NONE;
+        File file = fileFor(key);
+        try {
+            return MODE == Mode.RECORD ? Session.record(d, key, file) : Session.replay(d, key, file);
+        } catch (Exception e) {
+            System.err.println("Кассета " + key + " не подключена: " + e.getMessage());
+            return Session.NONE;
+        }
+    }
+
+    /**
+     * Файл кассеты: читаемая часть имени + хеш полного (имена целей бывают кириллицей).
+     */
+    static File fileFor(String key) {
+        String slug = key.replaceAll("[^A-Za-z0-9._-]+", "_").replaceAll("^_+|_+$", "");
+        if (slug.length() > 60) slug = slug.substring(0, 60);
+        try {
+            return new File(DIR, slug + "-" + ChangeWatcher.sha256(key).substring(0, 8) + ".har");
+        } catch (Exception e) {
+            return new File(DIR, slug + ".har");
+        }
+    }
+
+    /* ======================= сессия ======================= */
+
+    static final class Session implements AutoCloseable {
+
+        static final Session NONE = new Session(null, null, null);
+
+        private final String key;
+        private final File file;
+        private NetworkInterceptor interceptor;
+
+        // запись
+        private final List<Entry> recorded = Collections.synchronizedList(new ArrayList<>());
+        private volatile boolean keep;
+
+        // воспроизведение: метод+URL → ответы по порядку
+        private final Map<String, Deque<Entry>> exact = new HashMap<>();
+        private final Map<String, Deque<Entry>> loose = new HashMap<>();
+        private final AtomicInteger served = new AtomicInteger();
+        private final AtomicInteger misses = new AtomicInteger();
+
+        private Session(String key, File file, NetworkInterceptor interceptor) {
+            this.key = key;
+            this.file = file;
+            this.interceptor = interceptor;
+        }
+
+        private static Session record(WebDriver d, String key, File file) {
+            Session s = new Session(key, file, null);
+            Filter filter = next -> req -> {
+                long t0 = System.nanoTime();
+                HttpResponse res = next.execute(req);
+                byte[] body = Contents.bytes(res.getContent());
+                res.setContent(Contents.bytes(body)); // поток тела прочитан — отдаём браузеру копию
+                List<String[]> headers = headers(res);
+                s.recorded.add(new Entry(req.getMethod().name(), redactUrl(req.getUri()), res.getStatus(),
+                        headers, redactBody(header(headers, "content-type"), body), (System.nanoTime() - t0) / 1_000_000));
+                return res;
+            };
+            s.interceptor = new NetworkInterceptor(d, filter);
+            return s;
+        }
+
+        private static Session replay(WebDriver d, String key, File file) throws Exception {
+            Session s = new Session(key, file, null);
+            if (!file.isFile()) {
+                System.err.println("Кассеты нет: " + file + " — все запросы цели " + key + " получат 404");
+            } else {
+                for (Entry e : read(file)) {
+                    s.exact.computeIfAbsent(e.method + " " + e.url, k -> new ArrayDeque<>()).add(e);
+                    s.loose.computeIfAbsent(e.method + " " + stripQuery(e.url), k -> new ArrayDeque<>()).add(e);
+                }
+            }
+            HttpHandler handler = s::serve;
+            s.interceptor = new NetworkInterceptor(d, handler);
+            return s;
+        }
+
+        /**
+         * Сценарий прошёл — кассету стоит сохранить (упавший сценарий не затирает удачную запись).
+         */
+        void keep() {
+            keep = true;
+        }
+
+        @Override
+        public void close() {
+            if (interceptor == null) return;
+            try {
+                interceptor.close();
+            } catch (Exception ignored) {
+            }
+            if (MODE == Mode.RECORD && keep) {
+                try {
+                    List<Entry> copy;
+                    synchronized (recorded) {
+                        copy = new ArrayList<>(recorded);
+                    }
+                    write(file, key, copy);
+                    System.out.println("📼 Кассета " + key + ": " + copy.size() + " ответов → " + file);
+                } catch (Exception e) {
+                    System.err.println("Кассета " + key + " не сохранена: " + e.getMessage());
+                }
+            } else if (MODE == Mode.REPLAY && misses.get() > 0) {
+                System.err.println("📼 " + key + ": из кассеты " + served.get() + ", промахов " + misses.get());
+            }
+        }
+
+        private HttpResponse serve(HttpRequest req) {
+            String method = req.getMethod().name();
+            Entry e = next(exact.get(method + " " + req.getUri()));
+            if (e == null) e = next(loose.get(method + " " + stripQuery(req.getUri())));
+            if (e == null) {
+                misses.incrementAndGet();
+                return new HttpResponse().setStatus(404)
+                        .setHeader("Content-Type", "text/plain; charset=utf-8")
+                        .setContent(Contents.utf8String("Нет в кассете: " + method + " " + req.getUri()));
+            }
+            served.incrementAndGet();
+            HttpResponse res = new HttpResponse().setStatus(e.status);
+            for (String[] h : e.headers) res.addHeader(h[0], h[1]);
+            return res.setContent(Contents.bytes(e.body));
+        }
+
+        private static Entry next(Deque<Entry> q) {
+            if (q == null) return null;
+            synchronized (q) {
+                return q.size() > 1 ? q.pollFirst() : q.peekFirst();
+            }
+        }
+    }
+
+    /* ======================= HAR ======================= */
+
+    private record Entry(String method, String url, int status, List<String[]> headers, byte[] body, long timeMs) {
+    }
+
+    private static List<String[]> headers(HttpResponse res) {
+        List<String[]> out = new ArrayList<>();
+        for (String name : res.getHeaderNames()) {
+            String lower = name.toLowerCase(Locale.ROOT);
+            if (SKIP_HEADERS.contains(lower) || SECRET_HEADERS.contains(lower)) continue;
+            for (String value : res.getHeaders(name)) out.add(new String[]{name, value});
+        }
+        return out;
+    }
+
+    private static String header(List<String[]> headers, String name) {
+        for (String[] h : headers) if (h[0].equalsIgnoreCase(name)) return h[1];
+        return "";
+    }
+
+    /* ======================= вычистка секретов ======================= */
+
+    /**
+     * Значения секретных query-параметров → REDACTED. При воспроизведении такой URL находится поиском без query.
+     */
+    static String redactUrl(String url) {
+        Matcher m = QUERY_PARAM.matcher(url);
+        StringBuilder sb = new StringBuilder();
+        while (m.find()) {
+            String value = SECRET_PARAM.matcher(decode(m.group(2))).matches() ? REDACTED : m.group(3);
+            m.appendReplacement(sb, Matcher.quoteReplacement(m.group(1) + m.group(2) + "=" + value));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    /**
+     * JSON — значения секретных полей на любой глубине; любой текст — JWT. Бинарные ответы (картинки, шрифты)
+     * не трогаем.
+     */
+    static byte[] redactBody(String contentType, byte[] body) {
+        String type = contentType.toLowerCase(Locale.ROOT);
+        boolean json = type.contains("json");
+        boolean text = json || type.startsWith("text/") || type.contains("javascript") || type.contains("xml");
+        if (!text || body.length == 0) return body;
+        String s = new String(body, StandardCharsets.UTF_8);
+        if (json) {
+            try {
+                JsonElement root = JsonParser.parseString(s);
+                if (redactJson(root)) s = COMPACT.toJson(root); // без секретов тело остаётся байт в байт
+            } catch (JsonParseException ignored) {
+                // не JSON, хоть и назван так — чистим как текст
+            }
+        }
+        s = JWT.matcher(s).replaceAll(REDACTED);
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean redactJson(JsonElement el) {
+        boolean changed = false;
+        if (el.isJsonArray()) {
+            for (JsonElement item : el.getAsJsonArray()) changed |= redactJson(item);
+        } else if (el.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> e : el.getAsJsonObject().entrySet()) {
+                if (SECRET_FIELD.matcher(e.getKey()).matches() && e.getValue().isJsonPrimitive()) {
+                    e.setValue(new JsonPrimitive(REDACTED));
+                    changed = true;
+                } else {
+                    changed |= redactJson(e.getValue());
+                }
+            }
+        }
+        return changed;
+    }
+
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return s;
+        }
+    }
+
+    private static void write(File file, String key, List<Entry> entries) throws Exception {
+        JsonArray arr = new JsonArray();
+        String now = Instant.now().toString();
+        for (Entry e : entries) {
+            JsonObject request = new JsonObject();
+            request.addProperty("method", e.method);
+            request.addProperty("url", e.url);
+
+            JsonArray headers = new JsonArray();
+            String mime = "";
+            for (String[] h : e.headers) {
+                JsonObject o = new JsonObject();
+                o.addProperty("name", h[0]);
+                o.addProperty("value", h[1]);
+                headers.add(o);
+                if (h[0].equalsIgnoreCase("content-type")) mime = h[1];
+            }
+            JsonObject content = new JsonObject();
+            content.addProperty("size", e.body.length);
+            content.addProperty("mimeType", mime);
+            content.addProperty("text", Base64.getEncoder().encodeToString(e.body));
+            content.addProperty("encoding", "base64");
+
+            JsonObject response = new JsonObject();
+            response.addProperty("status", e.status);
+            response.add("headers", headers);
+            response.add("content", content);
+
+            JsonObject entry = new JsonObject();
+            entry.addProperty("startedDateTime", now);
+            entry.addProperty("time", e.timeMs);
+            entry.add("request", request);
+            entry.add("response", response);
+            arr.add(entry);
+        }
+        JsonObject creator = new JsonObject();
+        creator.addProperty("name", "watcher");
+        creator.addProperty("version", "1.0");
+        JsonObject log = new JsonObject();
+        log.addProperty("version", "1.2");
+        log.add("creator", creator);
+        log.addProperty("comment", key);
+        log.add("entries", arr);
+        JsonObject root = new JsonObject();
+        root.add("log", log);
+
+        writeSecure(file.toPath(), GSON.toJson(root));
+    }
+
+    /**
+     * Временный файл с правами только для владельца и атомарная подмена — как {@link CookieJar}.
+     */
+    private static void writeSecure(Path target, String json) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        if (!Files.isDirectory(dir)) {
+            try {
+                Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } catch (UnsupportedOperationException e) {
+                Files.createDirectories(dir);
+            }
+        }
+        Path tmp;
+        try {
+            tmp = Files.createTempFile(dir, ".tape-", ".tmp",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            tmp = Files.createTempFile(dir, ".tape-", ".tmp");
+        }
+        try {
+            Files.writeString(tmp, json, StandardCharsets.UTF_8);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static List<Entry> read(File file) throws Exception {
+        JsonObject root = JsonParser.parseString(Files.readString(file.toPath(), StandardCharsets.UTF_8)).getAsJsonObject();
+        List<Entry> out = new ArrayList<>();
+        for (JsonElement el : root.getAsJsonObject("log").getAsJsonArray("entries")) {
+            JsonObject entry = el.getAsJsonObject();
+            JsonObject request = entry.getAsJsonObject("request");
+            JsonObject response = entry.getAsJsonObject("response");
+            List<String[]> headers = new ArrayList<>();
+            for (JsonElement h : response.getAsJsonArray("headers")) {
+                headers.add(new String[]{h.getAsJsonObject().get("name").getAsString(),
+                        h.getAsJsonObject().get("value").getAsString()});
+            }
+            JsonObject content = response.getAsJsonObject("content");
+            String text = content.has("text") ? content.get("text").getAsString() : "";
+            byte[] body = content.has("encoding") && "base64".equals(content.get("encoding").getAsString())
+                    ? Base64.getDecoder().decode(text)
+                    : text.getBytes(StandardCharsets.UTF_8);
+            out.add(new Entry(request.get("method").getAsString(), request.get("url").getAsString(),
+                    response.get("status").getAsInt(), headers, body,
+                    entry.has("time") ? entry.get("time").getAsLong() : 0));
+        }
+        return out;
+    }
+
+    private static String stripQuery(String url) {
+        int q = url.indexOf('?');
+        return q < 0 ? url : url.substring(0, q);
+    }
+
+    private static Mode parseMode(String v) {
+        return switch (v.trim().toLowerCase(Locale.ROOT)) {
+            case "record" -> Mode.RECORD;
+            case "replay" -> Mode.REPLAY;
+            default -> Mode.OFF;
+        };
+    }
+
+    private static String getenvOrDefault(String key, String def) {
+        String v = System.getenv(key);
+        return (v == null || v.isBlank()) ? def : v;
+    }
+}
@@ -0,0 +1,311 @@
+package org.example;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Декларативные цели из JSON-файла (TARGETS_FILE) → модель {@link ChangeWatcher.Target}/{@link ChangeWatcher.Step}.
+ *
+ * Формат (пример — targets.example.json в корне репозитория):
+ * <pre>
+ * {
+ *   "selectors": { "JAVA_PAGE": "#root ... li:nth-child(3) > span" },
+ *   "targets": [
+ *     { "name": "Course: Java page",
+ *       "steps": [ {"go": "${WATCH_URL}"}, {"wait": "#root > *"}, {"click": "${JAVA_PAGE}"}, {"snap": "main"} ],
+ *       "ignore": [ ".sf-progress", "[data-last-visit]" ],
+ *       "mask": [ "\\d+%", "\\d{2}\\.\\d{2}\\.\\d{4}" ] }
+ *   ]
+ * }
+ * </pre>
+ * Шаги: go, click, clickText, clickTextAny [..], clickTextOrGo [text, url], wait, waitText, waitTextAny [..], snap.
+ * Необязательные ignore (CSS, вырезаются из снимка до извлечения текста) и mask (регулярные выражения Java,
+ * совпадения в тексте заменяются на *) — чтобы счётчики, даты и случайные блоки не меняли хеш цели.
+ * ${NAME} подставляется из "selectors", затем из переменных окружения.
+ * Ошибки собираются все сразу, с путём до места: targets[2].steps[1]: ...
+ */
+class TargetConfig {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([A-Za-z0-9_.-]+)}");
+    // псевдоклассы jsoup, которых нет в CSS браузера: querySelector с ними бросает SyntaxError.
+    // Полную проверку селекторов делает сам браузер при прогоне (ошибка цели, а не тихий пропуск)
+    private static final Pattern NON_BROWSER_PSEUDO = Pattern.compile(
+            ":(contains|containsOwn|containsData|containsWholeText|containsWholeOwnText"
+                    + "|matches|matchesOwn|matchesWholeText|matchesWholeOwnText|matchText|lt|gt|eq)\\(");
+
+    private TargetConfig() {
+    }
+
+    static List<ChangeWatcher.Target> load(File file, Function<String, String> vars) throws Exception {
+        String json = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+        return parse(json, vars);
+    }
+
+    static List<ChangeWatcher.Target> parse(String json, Function<String, String> env) {
+        List<String> errors = new ArrayList<>();
+        JsonElement rootEl;
+        try {
+            rootEl = JsonParser.parseString(json);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Некорректный JSON: " + e.getMessage());
+        }
+        if (!rootEl.isJsonObject()) throw new IllegalArgumentException("Ожидался JSON-объект с полем targets");
+        JsonObject root = rootEl.getAsJsonObject();
+
+        Map<String, String> selectors = new LinkedHashMap<>();
+        if (root.has("selectors")) {
+            if (!root.get("selectors").isJsonObject()) {
+                errors.add("selectors: ожидался объект имя → CSS");
+            } else {
+                for (Map.Entry<String, JsonElement> e : root.getAsJsonObject("selectors").entrySet()) {
+                    if (isString(e.getValue())) selectors.put(e.getKey(), e.getValue().getAsString());
+                    else errors.add("selectors." + e.getKey() + ": ожидалась строка");
+                }
+            }
+        }
+        Function<String, String> lookup = name -> selectors.containsKey(name) ? selectors.get(name) : env.apply(name);
+
+        List<ChangeWatcher.Target> targets = new ArrayList<>();
+        if (!root.has("targets") || !root.get("targets").isJsonArray()) {
+            errors.add("targets: ожидался массив целей");
+        } else {
+            Set<String> names = new HashSet<>();
+            JsonArray arr = root.getAsJsonArray("targets");
+            for (int i = 0; i < arr.size(); i++) {
+                ChangeWatcher.Target t = parseTarget(arr.get(i), "targets[" + i + "]", lookup, errors);
+                if (t == null) continue;
+                if (!names.add(t.name())) errors.add("targets[" + i + "]: повтор имени цели «" + t.name() + "»");
+                targets.add(t);
+            }
+            if (arr.isEmpty()) errors.add("targets: пустой список");
+        }
+
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException("Ошибки в описании целей:\n - " + String.join("\n - ", errors));
+        }
+        return List.copyOf(targets);
+    }
+
+    private static ChangeWatcher.Target parseTarget(JsonElement el, String path,
+                                                   Function<String, String> lookup, List<String> errors) {
+        if (!el.isJsonObject()) {
+            errors.add(path + ": ожидался объект {name, steps}");
+            return null;
+        }
+        JsonObject o = el.getAsJsonObject();
+        String name = isString(o.get("name")) ? o.get("name").getAsString().trim() : "";
+        if (name.isEmpty()) errors.add(path + ".name: не задано имя цели");
+        if (!o.has("steps") || !o.get("steps").isJsonArray() || o.getAsJsonArray("steps").isEmpty()) {
+            errors.add(path + ".steps: нужен непустой массив шагов");
+            return null;
+        }
+
+        JsonArray arr = o.getAsJsonArray("steps");
+        List<ChangeWatcher.Step> steps = new ArrayList<>();
+        int before = errors.size();
+        for (int i = 0; i < arr.size(); i++) {
+            ChangeWatcher.Step s = parseStep(arr.get(i), path + ".steps[" + i + "]", lookup, errors);
+            if (s != null) steps.add(s);
+        }
+        if (errors.size() > before) {
+            parseIgnore(o, path, lookup, errors); // ошибки ignore/mask — в тот же список
+            return null;
+        }
+
+        for (int i = 0; i < steps.size() - 1; i++) {
+            if (steps.get(i).type() == ChangeWatcher.Type.SNAP) {
+                errors.add(path + ".steps[" + i + "]: snap должен быть последним шагом");
+            }
+        }
+        if (steps.get(steps.size() - 1).type() != ChangeWatcher.Type.SNAP) {
+            errors.add(path + ".steps: сценарий должен заканчиваться шагом snap");
+        }
+        ChangeWatcher.Ignore ignore = parseIgnore(o, path, lookup, errors);
+        return name.isEmpty() ? null : new ChangeWatcher.Target(name, List.copyOf(steps), ignore);
+    }
+
+    private static ChangeWatcher.Ignore parseIgnore(JsonObject o, String path,
+                                                    Function<String, String> lookup, List<String> errors) {
+        List<String> selectors = new ArrayList<>();
+        if (o.has("ignore")) {
+            try {
+                selectors.addAll(Arrays.asList(list(o.get("ignore"), lookup, 1)));
+            } catch (IllegalArgumentException ex) {
+                errors.add(path + ".ignore: " + ex.getMessage());
+            }
+            for (int i = 0; i < selectors.size(); i++) {
+                try {
+                    css(selectors.get(i));
+                } catch (IllegalArgumentException ex) {
+                    errors.add(path + ".ignore[" + i + "]: " + ex.getMessage());
+                }
+            }
+        }
+        List<Pattern> masks = new ArrayList<>();
+        if (o.has("mask")) {
+            JsonElement v = o.get("mask");
+            if (!v.isJsonArray()) {
+                errors.add(path + ".mask: ожидался массив регулярных выражений");
+            } else {
+                JsonArray arr = v.getAsJsonArray();
+                for (int i = 0; i < arr.size(); i++) {
+                    if (!isString(arr.get(i)) || arr.get(i).getAsString().isEmpty()) {
+                        errors.add(path + ".mask[" + i + "]: ожидалась непустая строка");
+                        continue;
+                    }
+                    // без подстановки ${..}: в регулярках свои фигурные скобки
+                    try {
+                        masks.add(Pattern.compile(arr.get(i).getAsString()));
+                    } catch (PatternSyntaxException ex) {
+                        errors.add(path + ".mask[" + i + "]: некорректное регулярное выражение: " + ex.getDescription());
+                    }
+                }
+            }
+        }
+        return selectors.isEmpty() && masks.isEmpty()
+                ? ChangeWatcher.Ignore.NONE
+                : new ChangeWatcher.Ignore(List.copyOf(selectors), List.copyOf(masks));
+    }
+
+    private static ChangeWatcher.Step parseStep(JsonElement el, String path,
+                                               Function<String, String> lookup, List<String> errors) {
+        if (!el.isJsonObject() || el.getAsJsonObject().size() != 1) {
+            errors.add(path + ": шаг — объект ровно с одним ключом, например {\"wait\": \"main\"}");
+            return null;
+        }
+        Map.Entry<String, JsonElement> e = el.getAsJsonObject().entrySet().iterator().next();
+        String key = e.getKey();
+        JsonElement v = e.getValue();
+        try {
+            return switch (key) {
+                case "go" -> ChangeWatcher.Step.go(str(v, lookup));
+                case "click" -> ChangeWatcher.Step.click(css(str(v, lookup)));
+                case "clickText" -> ChangeWatcher.Step.clickText(str(v, lookup));
+                case "clickTextAny" -> ChangeWatcher.Step.clickTextAny(list(v, lookup, 1));
+                case "clickTextOrGo" -> {
+                    String[] p = list(v, lookup, 2);
+                    if (p.length != 2) throw new IllegalArgumentException("ожидалось [текст, url]");
+                    yield ChangeWatcher.Step.clickTextOrGo(p[0], p[1]);
+                }
+                case "wait" -> ChangeWatcher.Step.waitSel(css(str(v, lookup)));
+                case "waitText" -> ChangeWatcher.Step.waitText(str(v, lookup));
+                case "waitTextAny" -> ChangeWatcher.Step.waitTextAny(list(v, lookup, 1));
+                case "snap" -> ChangeWatcher.Step.snap(css(str(v, lookup)));
+                default -> throw new IllegalArgumentException("неизвестный шаг «" + key + "»");
+            };
+        } catch (IllegalArgumentException ex) {
+            errors.add(path + "." + key + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    private static String str(JsonElement v, Function<String, String> lookup) {
+        if (!isString(v)) throw new IllegalArgumentException("ожидалась строка");
+        String s = substitute(v.getAsString(), lookup);
+        if (s.isBlank()) throw new IllegalArgumentException("пустое значение");
+        return s;
+    }
+
+    /**
+     * CSS-селектор для браузера: отсекаем то, что точно не сработает в querySelector.
+     */
+    private static String css(String selector) {
+        Matcher m = NON_BROWSER_PSEUDO.matcher(selector);
+        if (m.find()) {
+            throw new IllegalArgumentException("«" + selector + "»: псевдокласс :" + m.group(1)
+                    + "() есть только в jsoup, браузер его не поймёт (для текста — clickText/waitText)");
+        }
+        return selector;
+    }
+
+    private static String[] list(JsonElement v, Function<String, String> lookup, int min) {
+        if (!v.isJsonArray() || v.getAsJsonArray().size() < min) {
+            throw new IllegalArgumentException("ожидался массив строк (минимум " + min + ")");
+        }
+        List<String> out = new ArrayList<>();
+        for (JsonElement item : v.getAsJsonArray()) out.add(str(item, lookup));
+        return out.toArray(new String[0]);
+    }
+
+    private static String substitute(String s, Function<String, String> lookup) {
+        Matcher m = PLACEHOLDER.matcher(s);
+        StringBuilder sb = new StringBuilder();
+        while (m.find()) {
+            String value = lookup.apply(m.group(1));
+            if (value == null || value.isBlank()) {
+                throw new IllegalArgumentException("не задано ${" + m.group(1) + "} (ни в selectors, ни в ENV)");
+            }
+            m.appendReplacement(sb, Matcher.quoteReplacement(value));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    private static boolean isString(JsonElement e) {
+        return e != null && e.isJsonPrimitive() && e.getAsJsonPrimitive().isString();
+    }
+
+    /**
+     * Цели одного профиля. Файл перечитывается, если изменился с прошлого прогона (mtime/размер);
+     * драйвер и состояние при этом не трогаются. Файл с ошибками — остаёмся на прежних целях.
+     * Файла нет (или не задан) — встроенные цели.
+     */
+    static final class Source {
+        private final File file;
+        private final Function<String, String> vars;
+        private final Supplier<List<ChangeWatcher.Target>> builtin;
+
+        private List<ChangeWatcher.Target> targets;
+        private long modified = -1;
+        private long size = -1;
+
+        Source(File file, Function<String, String> vars, Supplier<List<ChangeWatcher.Target>> builtin) {
+            this.file = file;
+            this.vars = vars;
+            this.builtin = builtin;
+        }
+
+        synchronized List<ChangeWatcher.Target> get() {
+            if (file == null) {
+                if (targets == null) targets = builtin.get();
+                return targets;
+            }
+            if (!file.isFile()) {
+                if (targets == null) {
+                    System.err.println("Файл целей не найден: " + file + " — используем встроенные цели");
+                    targets = builtin.get();
+                }
+                return targets;
+            }
+            long m = file.lastModified();
+            long len = file.length();
+            if (targets != null && m == modified && len == size) return targets;
+            try {
+                List<ChangeWatcher.Target> loaded = load(file, vars);
+                boolean reload = targets != null;
+                targets = loaded;
+                System.out.println((reload ? "🔄 Цели перечитаны: " : "📋 Цели загружены: ")
+                        + loaded.size() + " из " + file);
+            } catch (Exception e) {
+                System.err.println("Файл целей " + file + " не применён: " + e.getMessage());
+                if (targets == null) throw new IllegalStateException("Файл целей некорректен: " + e.getMessage(), e);
+            }
+            // запоминаем и неудачную версию, чтобы не парсить её на каждом прогоне
+            modified = m;
+            size = len;
+            return targets;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package org.example;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Профиль наблюдения: курс (WATCH_URL), учётка, цели, файл состояния, куки и breaker'ы — всё своё.
+ *
+ * Профили задаются файлом PROFILES_FILE:
+ * <pre>
+ * { "profiles": [
+ *     { "id": "java", "watchUrl": "https://...", "username": "a@b.c", "passwordEnv": "JAVA_PASSWORD",
+ *       "loginUrl": "https://.../login", "targetsFile": "targets-java.json" }
+ * ] }
+ * </pre>
+ * Без файла — один профиль "default" из WATCH_URL / WATCH_LOGIN_URL / WATCH_USERNAME / WATCH_PASSWORD / TARGETS_FILE,
+ * файлы у него прежние (watch-state.json, .watch-cookies.json), так что существующее состояние не теряется.
+ * У остальных профилей к именам файлов добавляется -id.
+ */
+final class WatchProfile {
+
+    static final String DEFAULT_ID = "default";
+
+    private static final String PROFILES_FILE = getenvOrDefault("PROFILES_FILE", "");
+
+    private static volatile List<WatchProfile> all;
+
+    private final String id;
+    private final String watchUrl;
+    private final String loginUrl;
+    private final String username;
+    private final String password;
+    private final TargetConfig.Source targets;
+    private final File stateFile;
+    private final File textsDir;
+    private final ChangeHistory history;
+    private final CookieJar cookies;
+    private final CircuitBreakers breakers = ChangeWatcher.newBreakers();
+
+    private WatchProfile(String id, String watchUrl, String loginUrl, String username, String password,
+                         String targetsFile) {
+        this.id = id;
+        this.watchUrl = watchUrl;
+        this.loginUrl = loginUrl;
+        this.username = username;
+        this.password = password;
+        this.targets = new TargetConfig.Source(
+                targetsFile.isBlank() ? null : new File(targetsFile),
+                this::var,
+                () -> ChangeWatcher.builtinTargets(watchUrl));
+        // при шардировании по воркерам — общий файл в WORKER_SHARED_DIR
+        String stateDir = WorkerLeases.enabled() ? WorkerLeases.INSTANCE.dir().getPath() : System.getProperty("user.dir");
+        this.stateFile = new File(stateDir, isDefault() ? "watch-state.json" : "watch-state-" + id + ".json");
+        this.textsDir = new File(stateDir, isDefault() ? "watch-texts" : "watch-texts-" + id);
+        this.history = new ChangeHistory(new File(stateDir, isDefault() ? "watch-history" : "watch-history-" + id));
+        File jar = new File(getenvOrDefault("COOKIE_JAR_FILE",
+                new File(System.getProperty("user.dir"), ".watch-cookies.json").getPath()));
+        this.cookies = new CookieJar(isDefault() ? jar : suffixed(jar, id));
+    }
+
+    /**
+     * Все профили процесса (читаются один раз).
+     */
+    static List<WatchProfile> all() {
+        List<WatchProfile> list = all;
+        if (list == null) {
+            synchronized (WatchProfile.class) {
+                if (all == null) all = PROFILES_FILE.isBlank() ? List.of(fromEnv()) : loadFile(new File(PROFILES_FILE));
+                list = all;
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Первый профиль — он же «основной» для команд без профиля (/render и старый API ChangeWatcher).
+     */
+    static WatchProfile primary() {
+        return all().get(0);
+    }
+
+    static WatchProfile byId(String id) {
+        for (WatchProfile p : all()) {
+            if (p.id.equalsIgnoreCase(id)) return p;
+        }
+        return null;
+    }
+
+    String id() {
+        return id;
+    }
+
+    String watchUrl() {
+        return watchUrl;
+    }
+
+    String loginUrl() {
+        return loginUrl;
+    }
+
+    String username() {
+        return username;
+    }
+
+    String password() {
+        return password;
+    }
+
+    List<ChangeWatcher.Target> targets() {
+        return targets.get();
+    }
+
+    File stateFile() {
+        return stateFile;
+    }
+
+    /**
+     * Последний текст цели (для диффа в дайджесте): watch-texts[-id]/&lt;хеш имени&gt;.txt рядом с файлом состояния.
+     */
+    File textFile(String targetName) {
+        try {
+            return new File(textsDir, ChangeWatcher.sha256(targetName).substring(0, 16) + ".txt");
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Журнал изменений целей профиля (watch-history[-id]/ рядом с файлом состояния).
+     */
+    ChangeHistory history() {
+        return history;
+    }
+
+    CookieJar cookies() {
+        return cookies;
+    }
+
+    CircuitBreakers breakers() {
+        return breakers;
+    }
+
+    boolean isDefault() {
+        return DEFAULT_ID.equals(id);
+    }
+
+    boolean canLogin() {
+        return !username.isBlank() && !password.isBlank() && !loginUrl.isBlank();
+    }
+
+    /**
+     * Ключ цели для lease'ов между воркерами: имена целей разных профилей могут совпадать.
+     */
+    String leaseKey(String targetName) {
+        return isDefault() ? targetName : id + ":" + targetName;
+    }
+
+    /**
+     * Подстановки для файла целей: ${WATCH_URL} и ${PROFILE_ID} — профиля, остальное — из ENV.
+     */
+    private String var(String name) {
+        return switch (name) {
+            case "WATCH_URL" -> watchUrl;
+            case "PROFILE_ID" -> id;
+            default -> System.getenv(name);
+        };
+    }
+
+    /* ======================= загрузка ======================= */
+
+    private static WatchProfile fromEnv() {
+        return new WatchProfile(DEFAULT_ID,
+                getenvOrDefault("WATCH_URL", ""),
+                getenvOrDefault("WATCH_LOGIN_URL", ""),
+                getenvOrDefault("WATCH_USERNAME", ""),
+                getenvOrDefault("WATCH_PASSWORD", ""),
+                getenvOrDefault("TARGETS_FILE", ""));
+    }
+
+    private static List<WatchProfile> loadFile(File file) {
+        Spec.Doc spec;
+        try {
+            spec = new Gson().fromJson(Files.readString(file.toPath(), StandardCharsets.UTF_8), Spec.Doc.class);
+        } catch (JsonSyntaxException e) {
+            throw new IllegalStateException("PROFILES_FILE: некорректный JSON: " + e.getMessage(), e);
+        } catch (Exception e) {
+            throw new IllegalStateException("PROFILES_FILE не читается: " + file + " — " + e.getMessage(), e);
+        }
+        if (spec == null || spec.profiles == null || spec.profiles.isEmpty()) {
+            throw new IllegalStateException("PROFILES_FILE: пустой список profiles");
+        }
+
+        List<String> errors = new ArrayList<>();
+        Set<String> ids = new HashSet<>();
+        List<WatchProfile> out = new ArrayList<>();
+        for (int i = 0; i < spec.profiles.size(); i++) {
+            Spec s = spec.profiles.get(i);
+            String path = "profiles[" + i + "]";
+            if (s == null) {
+                errors.add(path + ": пустой профиль");
+                continue;
+            }
+            String id = trim(s.id);
+            if (!id.matches("[A-Za-z0-9_-]+")) errors.add(path + ".id: нужен [A-Za-z0-9_-]+, а не «" + id + "»");
+            else if (!ids.add(id.toLowerCase(Locale.ROOT))) errors.add(path + ".id: повтор «" + id + "»");
+            if (trim(s.watchUrl).isEmpty()) errors.add(path + ".watchUrl: не задан");
+
+            String password = trim(s.passwordEnv).isEmpty() ? trim(s.password) : getenvOrDefault(s.passwordEnv.trim(), "");
+            if (!trim(s.passwordEnv).isEmpty() && password.isEmpty()) {
+                errors.add(path + ".passwordEnv: переменная " + s.passwordEnv.trim() + " не задана");
+            }
+            out.add(new WatchProfile(id, trim(s.watchUrl),
+                    trim(s.loginUrl).isEmpty() ? getenvOrDefault("WATCH_LOGIN_URL", "") : trim(s.loginUrl),
+                    trim(s.username), password, trim(s.targetsFile)));
+        }
+        if (!errors.isEmpty()) {
+            throw new IllegalStateException("Ошибки в PROFILES_FILE:\n - " + String.join("\n - ", errors));
+        }
+        System.out.println("👥 Профилей: " + out.size() + " из " + file);
+        return List.copyOf(out);
+    }
+
+    private static File suffixed(File f, String id) {
+        String name = f.getName();
+        int dot = name.lastIndexOf('.');
+        String renamed = dot <= 0 ? name + "-" + id : name.substring(0, dot) + "-" + id + name.substring(dot);
+        return new File(f.getParentFile(), renamed);
+    }
+
+    private static String trim(String s) {
+        return s == null ? "" : s.trim();
+    }
+
+    private static String getenvOrDefault(String key, String def) {
+        String v = System.getenv(key);
+        return (v == null || v.isBlank()) ? def : v;
+    }
+
+    /**
+     * Профиль как он записан в PROFILES_FILE (пароль лучше брать из ENV через passwordEnv).
+     */
+    private static class Spec {
+        String id;
+        String watchUrl;
+        String loginUrl;
+        String username;
+        String password;
+        String passwordEnv;
+        String targetsFile;
+
+        private static class Doc {
+            List<Spec> profiles;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Приём апдейтов через webhook вместо long polling.
+ *
+ * Идея:
+ *  - WEBHOOK_URL задан — бот поднимает свой HTTP(S)-эндпоинт (JDK HttpServer) и регистрирует его в Bot API (setWebhook)
+ *  - запрос проверяется по X-Telegram-Bot-Api-Secret-Token (WEBHOOK_SECRET, обязателен), апдейт кладётся в очередь,
+ *    ответ 200 уходит сразу — долгие команды (/checkjs) не держат соединение Telegram
+ *  - обработка — в WEBHOOK_WORKERS «полосах» по одному потоку; чат всегда попадает в одну полосу,
+ *    так что команды одного чата выполняются по порядку
+ *  - очередь полосы ограничена (WEBHOOK_QUEUE): переполнена — 503, Telegram повторит доставку позже
+ *
+ * HTTPS — если задан WEBHOOK_KEYSTORE (PKCS12); иначе обычный HTTP за обратным прокси.
+ * Самоподписанный сертификат: его PEM (WEBHOOK_CERT) отправляется в setWebhook.
+ */
+final class WebhookServer {
+
+    private static final String URL = getenvOrDefault("WEBHOOK_URL", "");
+    private static final String SECRET = getenvOrDefault("WEBHOOK_SECRET", "");
+    private static final String BIND = getenvOrDefault("WEBHOOK_BIND", "0.0.0.0");
+    private static final int PORT = Integer.parseInt(getenvOrDefault("WEBHOOK_PORT", "8443"));
+    private static final String KEYSTORE = getenvOrDefault("WEBHOOK_KEYSTORE", "");
+    private static final String KEYSTORE_PASSWORD = getenvOrDefault("WEBHOOK_KEYSTORE_PASSWORD", "");
+    private static final String CERT = getenvOrDefault("WEBHOOK_CERT", "");
+    private static final int WORKERS = Math.max(1, Integer.parseInt(getenvOrDefault("WEBHOOK_WORKERS", "4")));
+    private static final int QUEUE = Math.max(1, Integer.parseInt(getenvOrDefault("WEBHOOK_QUEUE", "100")));
+
+    private static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+    // формат secret_token в setWebhook
+    private static final Pattern SECRET_FORMAT = Pattern.compile("[A-Za-z0-9_-]{1,256}");
+    // апдейт Telegram — единицы КБ; больше — не наш запрос
+    private static final int MAX_BODY = 1 << 20;
+
+    private static final ObjectMapper JSON = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private static HttpServer server;
+    private static ThreadPoolExecutor[] lanes;
+
+    private WebhookServer() {
+    }
+
+    static boolean enabled() {
+        return !URL.isBlank();
+    }
+
+    static String url() {
+        return URL;
+    }
+
+    static String secret() {
+        return SECRET;
+    }
+
+    /**
+     * PEM самоподписанного сертификата для setWebhook или null.
+     */
+    static File certificate() {
+        return CERT.isBlank() ? null : new File(CERT);
+    }
+
+    /**
+     * Поднять эндпоинт; путь — из WEBHOOK_URL (https://host/telegram → /telegram).
+     * Без WEBHOOK_SECRET не стартует: эндпоинт открыт наружу, и кто угодно мог бы слать боту апдейты от имени админа.
+     */
+    static synchronized void start(Consumer<Update> consumer) throws Exception {
+        if (server != null) return;
+        if (!SECRET_FORMAT.matcher(SECRET).matches()) {
+            throw new IllegalStateException("WEBHOOK_URL задан, а WEBHOOK_SECRET пуст или некорректен"
+                    + " (нужно 1–256 символов A-Z a-z 0-9 _ -, например: openssl rand -hex 32)");
+        }
+        String path = URI.create(URL).getPath();
+        if (path == null || path.isEmpty()) path = "/";
+
+        lanes = new ThreadPoolExecutor[WORKERS];
+        for (int i = 0; i < WORKERS; i++) {
+            String name = "webhook-" + i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(QUEUE),
+                    r -> {
+                        Thread t = new Thread(r, name);
+                        t.setDaemon(true);
+                        return t;
+                    },
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+
+        InetSocketAddress addr = new InetSocketAddress(BIND, PORT);
+        if (KEYSTORE.isBlank()) {
+            server = HttpServer.create(addr, 0);
+        } else {
+            HttpsServer https = HttpsServer.create(addr, 0);
+            https.setHttpsConfigurator(new HttpsConfigurator(sslContext()));
+            server = https;
+        }
+        server.createContext(path, ex -> handle(ex, consumer));
+        // приём только кладёт в очередь — хватает пары потоков
+        server.setExecutor(Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "webhook-http");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.start();
+        System.out.println("🪝 Webhook: " + (KEYSTORE.isBlank() ? "http" : "https") + "://" + BIND + ":" + PORT + path
+                + " (полос " + WORKERS + ", очередь " + QUEUE + ")");
+    }
+
+    /* ======================= обработка ======================= */
+
+    private static void handle(HttpExchange ex, Consumer<Update> consumer) throws IOException {
+        try {
+            if (!"POST".equals(ex.getRequestMethod())) {
+                ex.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (!secretMatches(ex.getRequestHeaders().getFirst(SECRET_HEADER))) {
+                Metrics.inc("watcher_webhook_updates_total", "outcome", "forbidden");
+                ex.sendResponseHeaders(401, -1);
+                return;
+            }
+            byte[] body;
+            try (InputStream in = ex.getRequestBody()) {
+                body = in.readNBytes(MAX_BODY + 1);
+            }
+            if (body.length > MAX_BODY) {
+                ex.sendResponseHeaders(413, -1);
+                return;
+            }
+
+            Update u;
+            try {
+                u = JSON.readValue(body, Update.class);
+            } catch (Exception e) {
+                // 200: битый апдейт Telegram всё равно не исправит, повторять его незачем
+                Metrics.inc("watcher_webhook_updates_total", "outcome", "bad");
+                System.err.println("Webhook: не разобран апдейт: " + e.getMessage());
+                ex.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            long queued = System.nanoTime();
+            try {
+                lane(u).execute(() -> {
+                    Metrics.observe("watcher_webhook_queue_seconds", queued);
+                    try {
+                        consumer.accept(u);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                Metrics.inc("watcher_webhook_updates_total", "outcome", "rejected");
+                ex.getResponseHeaders().set("Retry-After", "1");
+                ex.sendResponseHeaders(503, -1);
+                return;
+            }
+            Metrics.inc("watcher_webhook_updates_total", "outcome", "accepted");
+            ex.sendResponseHeaders(200, -1);
+        } finally {
+            ex.close();
+        }
+    }
+
+    /**
+     * Полоса по чату — команды одного чата не обгоняют друг друга.
+     */
+    private static ThreadPoolExecutor lane(Update u) {
+        long key = u.hasMessage() ? u.getMessage().getChatId() : u.getUpdateId();
+        return lanes[(int) Math.floorMod(key, (long) lanes.length)];
+    }
+
+    private static boolean secretMatches(String header) {
+        if (header == null) return false;
+        return MessageDigest.isEqual(header.getBytes(StandardCharsets.UTF_8), SECRET.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static SSLContext sslContext() throws Exception {
+        char[] password = KEYSTORE_PASSWORD.toCharArray();
+        KeyStore ks = KeyStore.getInstance("PKCS12");
+        try (InputStream in = new FileInputStream(KEYSTORE)) {
+            ks.load(in, password);
+        }
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(ks, password);
+        SSLContext ctx = SSLContext.getInstance("TLS");
+        ctx.init(kmf.getKeyManagers(), null, null);
+        return ctx;
+    }
+
+    private static String getenvOrDefault(String key, String def) {
+        String v = System.getenv(key);
+        return (v == null || v.isBlank()) ? def : v;
+    }
+}
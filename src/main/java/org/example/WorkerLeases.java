@@ -0,0 +1,310 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Шардирование целей между несколькими процессами бота через общую папку (WORKER_SHARED_DIR).
+ *
+ * Идея:
+ *  - каждый воркер пишет heartbeat: <dir>/workers/<id>.hb (раз в треть LEASE_TTL_MS, но не реже 15 с);
+ *    живые — те, чей heartbeat моложе трёх периодов
+ *  - цель «предпочитает» воркера: живые воркеры по имени, индекс = hash(цель) mod их число
+ *  - право на цель — lease-файл <dir>/leases/<цель>.lease (владелец + срок), читается/пишется под OS-блокировкой файла
+ *  - свой lease продлеваем, пока мы предпочтительный воркер; предпочтительный воркер забирает цель и у живого
+ *    владельца (новый воркер присоединился), и у умершего, не дожидаясь конца его lease
+ *  - состояние watch-state.json лежит там же и сливается под отдельной блокировкой (см. ChangeWatcher.State)
+ *  - прогон запускается командой /checkjs, а апдейты бота получает ровно один процесс (второй getUpdates
+ *    на тот же BOT_TOKEN — 409 Conflict): он кладёт запрос прогона в <dir>/runs/, остальные воркеры
+ *    (BOT_RECEIVE_UPDATES=false) подхватывают его, проверяют свои цели и сами шлют результаты в чат
+ */
+class WorkerLeases {
+
+    private static final String SHARED_DIR = getenvOrDefault("WORKER_SHARED_DIR", "");
+    private static final long LEASE_TTL_MS =
+            Long.parseLong(getenvOrDefault("LEASE_TTL_MS", "600000"));
+    // как часто воркер смотрит в <dir>/runs/ за запросами прогона
+    private static final long RUN_POLL_MS =
+            Math.max(200, Long.parseLong(getenvOrDefault("WORKER_RUN_POLL_MS", "2000")));
+
+    static final WorkerLeases INSTANCE = SHARED_DIR.isBlank()
+            ? null
+            : new WorkerLeases(new File(SHARED_DIR), getenvOrDefault("WORKER_ID", defaultWorkerId()), LEASE_TTL_MS);
+
+    private final File dir;
+    private final File workersDir;
+    private final File leasesDir;
+    private final File runsDir;
+    private final String id;
+    private final long ttlMs;
+    private final long heartbeatMs;
+    private final Set<String> owned = new LinkedHashSet<>();
+    private ScheduledExecutorService heartbeat;
+    private ScheduledExecutorService runWatcher;
+    private final Set<String> seenRuns = new HashSet<>();
+    private long runSeq;
+
+    /**
+     * Запрос прогона от процесса, получившего /checkjs.
+     */
+    record RunRequest(long chatId, List<String> profileIds, String origin) {
+    }
+
+    /**
+     * Что делать с чужим запросом прогона (в потоке наблюдателя, по одному запросу за раз).
+     */
+    interface RunHandler {
+        void run(RunRequest request) throws Exception;
+    }
+
+    WorkerLeases(File dir, String id, long ttlMs) {
+        this.dir = dir;
+        this.workersDir = new File(dir, "workers");
+        this.leasesDir = new File(dir, "leases");
+        this.runsDir = new File(dir, "runs");
+        this.id = id.replaceAll("[^a-zA-Z0-9._-]+", "_");
+        this.ttlMs = Math.max(10_000, ttlMs);
+        this.heartbeatMs = Math.max(1000, Math.min(this.ttlMs / 3, 15_000));
+        //noinspection ResultOfMethodCallIgnored
+        workersDir.mkdirs();
+        //noinspection ResultOfMethodCallIgnored
+        leasesDir.mkdirs();
+        //noinspection ResultOfMethodCallIgnored
+        runsDir.mkdirs();
+    }
+
+    static boolean enabled() {
+        return INSTANCE != null;
+    }
+
+    String id() {
+        return id;
+    }
+
+    File dir() {
+        return dir;
+    }
+
+    /**
+     * Попробовать взять (или продлить) цель.
+     *
+     * @return id воркера, который владеет целью после вызова (наш id — цель наша)
+     */
+    synchronized String tryAcquire(String target) {
+        long now = System.currentTimeMillis();
+        writeHeartbeat(now);
+        String preferred = preferredWorker(target, now);
+        try (FileChannel ch = FileChannel.open(leaseFile(target).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock ignored = ch.lock()) {
+            Lease cur = readLease(ch);
+            boolean valid = cur != null && cur.expiresAt() > now;
+
+            if (valid && !cur.owner().equals(id)) {
+                // чужой lease уважаем, только если цель не наша: иначе при передаче (новый воркер, владелец умер)
+                // прежний владелец мог уже отпустить её в своём прогоне, и цель не проверил бы никто
+                if (!id.equals(preferred)) return cur.owner();
+                System.out.println("Цель " + target + " переходит от воркера " + cur.owner() + " к " + id);
+            }
+
+            if (!id.equals(preferred)) {
+                // цель теперь предпочитает другой воркер (например, присоединился новый) — отпускаем
+                if (valid) writeLease(ch, new Lease(id, 0));
+                owned.remove(target);
+                return preferred;
+            }
+            writeLease(ch, new Lease(id, now + ttlMs));
+            owned.add(target);
+            return id;
+        } catch (IOException e) {
+            // общая папка недоступна — лучше проверить цель дважды, чем не проверить вовсе
+            System.err.println("Lease " + target + " недоступен: " + e.getMessage());
+            return id;
+        }
+    }
+
+    /**
+     * Фоновый heartbeat + продление своих lease, чтобы они не истекали между редкими прогонами.
+     */
+    synchronized void start() {
+        if (heartbeat != null) return;
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "worker-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        heartbeat.scheduleWithFixedDelay(this::renewAll, 0, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void renewAll() {
+        try {
+            List<String> mine;
+            synchronized (this) {
+                mine = new ArrayList<>(owned);
+            }
+            writeHeartbeat(System.currentTimeMillis());
+            for (String t : mine) tryAcquire(t);
+        } catch (Exception e) {
+            System.err.println("Heartbeat воркера: " + e.getMessage());
+        }
+    }
+
+    /* ======================= передача прогонов ======================= */
+
+    /**
+     * Объявить прогон остальным воркерам: файл runs/&lt;время&gt;-&lt;воркер&gt;-&lt;n&gt;.req (запись через tmp + rename).
+     */
+    synchronized void publishRun(long chatId, List<String> profileIds) {
+        long now = System.currentTimeMillis();
+        String name = now + "-" + id + "-" + (runSeq++) + ".req";
+        String body = chatId + "\n" + String.join(",", profileIds) + "\n" + id + "\n";
+        try {
+            File tmp = new File(runsDir, "." + name + ".tmp");
+            Files.writeString(tmp.toPath(), body, StandardCharsets.UTF_8);
+            Files.move(tmp.toPath(), new File(runsDir, name).toPath(), java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+            seenRuns.add(name);
+        } catch (IOException e) {
+            System.err.println("Запрос прогона не передан воркерам: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Следить за запросами прогона других процессов. Запросы, лежавшие до старта, не выполняются.
+     */
+    synchronized void watchRuns(RunHandler handler) {
+        if (runWatcher != null) return;
+        for (String n : listRuns()) seenRuns.add(n);
+        runWatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "worker-runs");
+            t.setDaemon(true);
+            return t;
+        });
+        runWatcher.scheduleWithFixedDelay(() -> pollRuns(handler), RUN_POLL_MS, RUN_POLL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void pollRuns(RunHandler handler) {
+        long now = System.currentTimeMillis();
+        for (String name : listRuns()) {
+            File f = new File(runsDir, name);
+            // старые запросы подчищает любой воркер: все живые давно их прочли
+            if (now - f.lastModified() > ttlMs) {
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+                synchronized (this) {
+                    seenRuns.remove(name);
+                }
+                continue;
+            }
+            synchronized (this) {
+                if (!seenRuns.add(name)) continue;
+            }
+            try {
+                String[] lines = Files.readString(f.toPath(), StandardCharsets.UTF_8).split("\n");
+                if (lines.length < 3) continue;
+                List<String> profiles = new ArrayList<>();
+                for (String p : lines[1].split(",")) if (!p.isBlank()) profiles.add(p.trim());
+                RunRequest req = new RunRequest(Long.parseLong(lines[0].trim()), profiles, lines[2].trim());
+                if (req.origin().equals(id)) continue;
+                System.out.println("👷 Прогон от воркера " + req.origin() + " для чата " + req.chatId());
+                handler.run(req);
+            } catch (Exception e) {
+                System.err.println("Запрос прогона " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private List<String> listRuns() {
+        String[] names = runsDir.list((d, n) -> n.endsWith(".req"));
+        List<String> out = names == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(names));
+        Collections.sort(out);
+        return out;
+    }
+
+    /* ======================= внутреннее ======================= */
+
+    private String preferredWorker(String target, long now) {
+        List<String> live = liveWorkers(now);
+        if (live.isEmpty()) return id;
+        return live.get(Math.floorMod(target.hashCode(), live.size()));
+    }
+
+    private List<String> liveWorkers(long now) {
+        List<String> live = new ArrayList<>();
+        File[] files = workersDir.listFiles((d, n) -> n.endsWith(".hb"));
+        if (files != null) {
+            for (File f : files) {
+                if (now - f.lastModified() <= 3 * heartbeatMs) live.add(f.getName().substring(0, f.getName().length() - 3));
+            }
+        }
+        if (!live.contains(id)) live.add(id);
+        Collections.sort(live);
+        return live;
+    }
+
+    private void writeHeartbeat(long now) {
+        File hb = new File(workersDir, id + ".hb");
+        try {
+            Files.writeString(hb.toPath(), String.valueOf(now), StandardCharsets.UTF_8);
+            //noinspection ResultOfMethodCallIgnored
+            hb.setLastModified(now);
+        } catch (IOException e) {
+            System.err.println("Heartbeat не записан: " + e.getMessage());
+        }
+    }
+
+    private File leaseFile(String target) {
+        String safe = target.replaceAll("[^a-zA-Z0-9._-]+", "_");
+        // имя цели может быть не-латиницей целиком — добавляем хэш, чтобы файлы не совпали
+        return new File(leasesDir, safe + "-" + Integer.toHexString(target.hashCode()) + ".lease");
+    }
+
+    private static Lease readLease(FileChannel ch) throws IOException {
+        long size = ch.size();
+        if (size == 0) return null;
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min(size, 4096));
+        ch.read(buf, 0);
+        String[] lines = new String(buf.array(), 0, buf.position(), StandardCharsets.UTF_8).split("\n");
+        if (lines.length < 2) return null;
+        try {
+            return new Lease(lines[0].trim(), Long.parseLong(lines[1].trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void writeLease(FileChannel ch, Lease lease) throws IOException {
+        byte[] bytes = (lease.owner() + "\n" + lease.expiresAt() + "\n").getBytes(StandardCharsets.UTF_8);
+        ch.truncate(0);
+        ch.write(ByteBuffer.wrap(bytes), 0);
+        ch.force(true);
+    }
+
+    private static String defaultWorkerId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "host";
+        }
+        return host + "-" + ProcessHandle.current().pid();
+    }
+
+    private static String getenvOrDefault(String key, String def) {
+        String v = System.getenv(key);
+        return (v == null || v.isBlank()) ? def : v;
+    }
+
+    private record Lease(String owner, long expiresAt) {
+    }
+}
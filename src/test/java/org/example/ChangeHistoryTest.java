@@ -0,0 +1,96 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeHistoryTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void emptyHistory() {
+        ChangeHistory h = new ChangeHistory(dir.toFile());
+        assertEquals(0, h.count("t"));
+        assertEquals(0, h.countSince("t", 0));
+        assertEquals(-1, h.lastAt("t"));
+        assertTrue(h.last("t", 5).isEmpty());
+    }
+
+    @Test
+    void lastReturnsNewestFirstPerTarget() {
+        ChangeHistory h = new ChangeHistory(dir.toFile());
+        h.append("Цель: Java", null, "h1", 10);
+        h.append("other", null, "x1", 1);
+        h.append("Цель: Java", "h1", "h2", 20);
+        h.append("Цель: Java", "h2", "h3", 30);
+
+        assertEquals(3, h.count("Цель: Java"));
+        assertEquals(1, h.count("other"));
+        List<ChangeHistory.Entry> last = h.last("Цель: Java", 2);
+        assertEquals(2, last.size());
+        assertEquals("h3", last.get(0).newHash());
+        assertEquals("h2", last.get(0).prevHash());
+        assertEquals("Цель: Java", last.get(0).target());
+        assertEquals("h2", last.get(1).newHash());
+        assertEquals(3, h.last("Цель: Java", 10).size());
+        assertEquals(last.get(0).at(), h.lastAt("Цель: Java"));
+    }
+
+    @Test
+    void countSinceFindsFirstEntryAtOrAfter() throws Exception {
+        ChangeHistory h = new ChangeHistory(dir.toFile());
+        writeIndex(h.indexFile("t"), 1000, 2000, 2000);
+        h.append("t", null, "h1", 1);
+
+        assertEquals(4, h.countSince("t", 0));
+        assertEquals(3, h.countSince("t", 1500));
+        assertEquals(3, h.countSince("t", 2000));
+        assertEquals(1, h.countSince("t", 2001));
+        assertEquals(0, h.countSince("t", h.lastAt("t") + 1));
+    }
+
+    @Test
+    void indexTimeNeverGoesBack() throws Exception {
+        ChangeHistory h = new ChangeHistory(dir.toFile());
+        // часы «ушли назад»: последняя запись индекса — из будущего
+        long future = System.currentTimeMillis() + 3_600_000;
+        writeIndex(h.indexFile("t"), future);
+        h.append("t", null, "h1", 1);
+
+        assertEquals(future, h.lastAt("t"));
+        assertEquals(2, h.countSince("t", future));
+    }
+
+    @Test
+    void tornIndexRecordIsDroppedOnNextAppend() throws Exception {
+        ChangeHistory h = new ChangeHistory(dir.toFile());
+        h.append("t", null, "h1", 1);
+        File idx = h.indexFile("t");
+        Files.write(idx.toPath(), new byte[]{1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+
+        assertEquals(1, h.count("t"), "недописанная запись не считается");
+        assertEquals("h1", h.last("t", 5).get(0).newHash());
+
+        h.append("t", "h1", "h2", 2);
+        assertEquals(2 * ChangeHistory.ENTRY_BYTES, idx.length());
+        List<ChangeHistory.Entry> last = h.last("t", 5);
+        assertEquals(List.of("h2", "h1"), last.stream().map(ChangeHistory.Entry::newHash).toList());
+    }
+
+    private static void writeIndex(File idx, long... times) throws Exception {
+        ByteBuffer b = ByteBuffer.allocate(times.length * ChangeHistory.ENTRY_BYTES);
+        for (long at : times) b.putLong(at).putLong(0);
+        Files.createDirectories(idx.getParentFile().toPath());
+        Files.write(idx.toPath(), b.array());
+    }
+}
@@ -0,0 +1,87 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Подавление «мигания» целей: каждый шаг — отдельный прогон через файл состояния (load → observe → mergeAndSave),
+ * как в {@link ChangeWatcher}.
+ */
+class ChangeWatcherStateTest {
+
+    @TempDir
+    Path dir;
+
+    private boolean run(File file, String hash) {
+        ChangeWatcher.State s = ChangeWatcher.State.load(file);
+        List<String> touched = new ArrayList<>();
+        boolean changed = s.observe("t", hash, touched);
+        s.mergeAndSave(file, touched);
+        return changed;
+    }
+
+    @Test
+    void firstHashIsAChange() {
+        File f = dir.resolve("state.json").toFile();
+        assertTrue(run(f, "A"));
+        assertFalse(run(f, "A"));
+        assertEquals("A", ChangeWatcher.State.load(f).hashes.get("t"));
+    }
+
+    @Test
+    void flapBackNeedsConfirmation() {
+        File f = dir.resolve("state.json").toFile();
+        assertTrue(run(f, "A"));
+        assertTrue(run(f, "B"));
+        assertFalse(run(f, "A"), "возврат к недавнему хешу — только кандидат");
+        assertEquals("A", ChangeWatcher.State.load(f).pending.get("t"), "кандидат сохранён между прогонами");
+        assertFalse(run(f, "B"), "мигнула и вернулась — не изменение");
+        assertNull(ChangeWatcher.State.load(f).pending.get("t"), "кандидат отменён и это сохранено");
+        assertEquals("B", ChangeWatcher.State.load(f).hashes.get("t"));
+    }
+
+    @Test
+    void flapBackConfirmedOnSecondSighting() {
+        File f = dir.resolve("state.json").toFile();
+        run(f, "A");
+        run(f, "B");
+        assertFalse(run(f, "A"));
+        assertTrue(run(f, "A"), "второе появление подряд — изменение");
+        ChangeWatcher.State s = ChangeWatcher.State.load(f);
+        assertEquals("A", s.hashes.get("t"));
+        assertNull(s.pending.get("t"));
+    }
+
+    @Test
+    void newHashesAreChangesImmediately() {
+        File f = dir.resolve("state.json").toFile();
+        assertTrue(run(f, "A"));
+        assertTrue(run(f, "B"));
+        assertTrue(run(f, "C"));
+        assertFalse(run(f, "C"));
+        ChangeWatcher.State s = ChangeWatcher.State.load(f);
+        assertEquals("C", s.hashes.get("t"));
+        assertEquals(List.of("A", "B"), s.recent.get("t"));
+    }
+
+    @Test
+    void otherTargetsOnDiskSurviveMerge() {
+        File f = dir.resolve("state.json").toFile();
+        ChangeWatcher.State other = new ChangeWatcher.State();
+        List<String> touched = new ArrayList<>();
+        other.observe("other", "X", touched);
+        other.mergeAndSave(f, touched);
+
+        run(f, "A");
+        ChangeWatcher.State s = ChangeWatcher.State.load(f);
+        assertEquals("X", s.hashes.get("other"));
+        assertEquals("A", s.hashes.get("t"));
+    }
+}
@@ -0,0 +1,48 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakersTest {
+
+    @Test
+    void opensAfterThresholdAndNotifiesOnce() {
+        CircuitBreakers b = new CircuitBreakers(3, 1000, 10_000);
+        assertFalse(b.onFailure("t", 0));
+        assertFalse(b.onFailure("t", 0));
+        assertTrue(b.allow("t", 0));
+
+        assertTrue(b.onFailure("t", 0), "третье падение размыкает");
+        assertFalse(b.allow("t", 999));
+        assertEquals(1, b.retryInMs("t", 999));
+        assertTrue(b.allow("t", 1000), "пауза истекла — пробная попытка");
+
+        assertFalse(b.onFailure("t", 1000), "о размыкании уже сообщали");
+        assertEquals(4, b.failures("t"));
+    }
+
+    @Test
+    void backoffDoublesUpToMax() {
+        CircuitBreakers b = new CircuitBreakers(1, 1000, 3000);
+        b.onFailure("t", 0);
+        assertEquals(1000, b.retryInMs("t", 0));
+        b.onFailure("t", 0);
+        assertEquals(2000, b.retryInMs("t", 0));
+        b.onFailure("t", 0);
+        assertEquals(3000, b.retryInMs("t", 0));
+        for (int i = 0; i < 40; i++) b.onFailure("t", 0);
+        assertEquals(3000, b.retryInMs("t", 0), "без переполнения сдвига");
+    }
+
+    @Test
+    void successResetsTarget() {
+        CircuitBreakers b = new CircuitBreakers(1, 1000, 3000);
+        assertTrue(b.onFailure("t", 0));
+        b.onSuccess("t");
+        assertTrue(b.allow("t", 0));
+        assertEquals(0, b.failures("t"));
+        assertTrue(b.onFailure("t", 0), "после починки о новом размыкании сообщаем снова");
+        assertTrue(b.allow("other", 0));
+    }
+}
@@ -0,0 +1,34 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeadlineTest {
+
+    @Test
+    void timeoutsAreCutToTheBudget() {
+        Deadline dl = Deadline.in(60_000);
+        assertFalse(dl.expired());
+        assertEquals(500, dl.ms(500));
+        assertTrue(dl.ms(120_000) <= 60_000);
+        assertEquals(25, dl.sec(25));
+        assertTrue(dl.sec(120) <= 60);
+    }
+
+    @Test
+    void expiredBudgetThrows() {
+        Deadline dl = Deadline.in(0);
+        assertTrue(dl.expired());
+        assertEquals(0, dl.remainingMs());
+        Deadline.Exceeded e = assertThrows(Deadline.Exceeded.class, () -> dl.check("цель"));
+        assertTrue(e.getMessage().contains("цель"));
+        assertThrows(Deadline.Exceeded.class, () -> dl.ms(100));
+        assertThrows(Deadline.Exceeded.class, () -> dl.sec(1));
+    }
+
+    @Test
+    void negativeBudgetIsExpired() {
+        assertTrue(Deadline.in(-5).expired());
+    }
+}
@@ -0,0 +1,36 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DigestTest {
+
+    @Test
+    void diffShowsChangedLinesWithContext() {
+        String before = "a\nb\nc\nd\ne\nf";
+        String after = "a\nb\nc\nD\ne\nf";
+        assertEquals("  b\n  c\n- d\n+ D\n  e\n  f\n", Digest.diff(before, after));
+    }
+
+    @Test
+    void diffHandlesInsertionsAndFirstText() {
+        assertEquals("  x\n+ y\n", Digest.diff("x", "x\ny"));
+        assertEquals("+ x\n", Digest.diff("", "x"));
+        assertEquals("- x\n", Digest.diff("x", null));
+    }
+
+    @Test
+    void sameTextIsMarkupOnlyChange() {
+        assertTrue(Digest.diff("a\nb", "a\nb").contains("только разметка"));
+    }
+
+    @Test
+    void hugeChangeFallsBackToLineCounts() {
+        String before = "a\n".repeat(3000);
+        String after = "b\n".repeat(3000);
+        String d = Digest.diff(before, after);
+        assertTrue(d.contains("слишком велико"), d);
+        assertTrue(d.contains("было 3001 строк"), d);
+    }
+}
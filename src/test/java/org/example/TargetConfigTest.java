@@ -0,0 +1,139 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TargetConfigTest {
+
+    private static final Function<String, String> ENV = Map.of("WATCH_URL", "https://example.org/course")::get;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void parsesStepsAndPlaceholders() {
+        List<ChangeWatcher.Target> targets = TargetConfig.parse("""
+                { "selectors": { "PAGE": "li:nth-child(3) > span" },
+                  "targets": [ { "name": " Java ",
+                                 "steps": [ {"go": "${WATCH_URL}/java"}, {"click": "${PAGE}"},
+                                            {"clickTextOrGo": ["Далее", "${WATCH_URL}/next"]},
+                                            {"waitTextAny": ["a", "b"]}, {"snap": "main"} ] } ] }
+                """, ENV);
+
+        assertEquals(1, targets.size());
+        ChangeWatcher.Target t = targets.get(0);
+        assertEquals("Java", t.name());
+        assertEquals(List.of(
+                ChangeWatcher.Step.go("https://example.org/course/java"),
+                ChangeWatcher.Step.click("li:nth-child(3) > span"),
+                ChangeWatcher.Step.clickTextOrGo("Далее", "https://example.org/course/next"),
+                ChangeWatcher.Step.waitTextAny("a", "b"),
+                ChangeWatcher.Step.snap("main")), t.steps());
+        assertEquals(ChangeWatcher.Ignore.NONE, t.ignore());
+    }
+
+    @Test
+    void collectsAllErrorsWithPaths() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> TargetConfig.parse("""
+                { "targets": [
+                    { "name": "a", "steps": [ {"snap": "main"}, {"go": "${NOPE}"} ] },
+                    { "name": "b", "steps": [ {"jump": "x"}, {"snap": "main"} ] },
+                    { "name": "c", "steps": [ {"wait": "main"} ] },
+                    { "name": "c", "steps": [ {"snap": "main"} ] },
+                    { "steps": [] }
+                ] }
+                """, ENV));
+
+        String m = e.getMessage();
+        assertTrue(m.contains("targets[0].steps[1].go: не задано ${NOPE}"), m);
+        assertTrue(m.contains("targets[1].steps[0].jump: неизвестный шаг"), m);
+        assertTrue(m.contains("targets[2].steps: сценарий должен заканчиваться шагом snap"), m);
+        assertTrue(m.contains("targets[3]: повтор имени цели «c»"), m);
+        assertTrue(m.contains("targets[4].steps: нужен непустой массив шагов"), m);
+    }
+
+    @Test
+    void rejectsSnapBeforeTheEnd() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> TargetConfig.parse(
+                "{\"targets\":[{\"name\":\"a\",\"steps\":[{\"snap\":\"main\"},{\"snap\":\"main\"}]}]}", ENV));
+        assertTrue(e.getMessage().contains("targets[0].steps[0]: snap должен быть последним шагом"), e.getMessage());
+    }
+
+    @Test
+    void rejectsBrokenJsonAndShape() {
+        assertTrue(assertThrows(IllegalArgumentException.class, () -> TargetConfig.parse("{", ENV))
+                .getMessage().startsWith("Некорректный JSON"));
+        assertTrue(assertThrows(IllegalArgumentException.class, () -> TargetConfig.parse("[]", ENV))
+                .getMessage().contains("JSON-объект"));
+        assertTrue(assertThrows(IllegalArgumentException.class, () -> TargetConfig.parse("{\"targets\":[]}", ENV))
+                .getMessage().contains("targets: пустой список"));
+    }
+
+    @Test
+    void parsesIgnoreAndMask() {
+        ChangeWatcher.Target t = TargetConfig.parse("""
+                { "selectors": { "PROGRESS": ".sf-progress" },
+                  "targets": [ { "name": "a", "steps": [ {"snap": "main"} ],
+                                 "ignore": [ "${PROGRESS}", "[data-last-visit]" ],
+                                 "mask": [ "\\\\d+%" ] } ] }
+                """, ENV).get(0);
+
+        assertEquals(List.of(".sf-progress", "[data-last-visit]"), t.ignore().selectors());
+        assertEquals("Пройдено * курса", t.ignore().mask("Пройдено 42% курса"));
+    }
+
+    @Test
+    void rejectsBadIgnoreSelectorsAndMasks() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> TargetConfig.parse("""
+                { "targets": [ { "name": "a", "steps": [ {"click": "li:contains(Java)"}, {"snap": "main"} ],
+                                 "ignore": [ ".ok", "span:matchesOwn(\\\\d+)", "div:has(> .badge)" ],
+                                 "mask": [ "(", "" ] } ] }
+                """, ENV));
+
+        String m = e.getMessage();
+        assertFalse(m.contains("ignore[0]"), m);
+        assertTrue(m.contains("targets[0].ignore[1]: «span:matchesOwn(\\d+)»: псевдокласс :matchesOwn()"), m);
+        assertFalse(m.contains("ignore[2]"), "селекторы браузера, которых нет в jsoup, не отвергаются: " + m);
+        assertTrue(m.contains("targets[0].steps[0].click: «li:contains(Java)»: псевдокласс :contains()"), m);
+        assertTrue(m.contains("targets[0].mask[0]: некорректное регулярное выражение"), m);
+        assertTrue(m.contains("targets[0].mask[1]: ожидалась непустая строка"), m);
+    }
+
+    @Test
+    void sourceKeepsLastGoodTargetsOnBrokenFile() throws Exception {
+        File f = dir.resolve("targets.json").toFile();
+        write(f, "{\"targets\":[{\"name\":\"a\",\"steps\":[{\"snap\":\"main\"}]}]}");
+        TargetConfig.Source src = new TargetConfig.Source(f, ENV, List::of);
+        assertEquals("a", src.get().get(0).name());
+
+        write(f, "{\"targets\":[{\"name\":\"b\",\"steps\":[{\"snap\":\"main\"}]}], \"broken\": ");
+        assertTrue(f.setLastModified(f.lastModified() + 2000));
+        assertEquals("a", src.get().get(0).name(), "битый файл не применяется");
+
+        write(f, "{\"targets\":[{\"name\":\"bb\",\"steps\":[{\"snap\":\"main\"}]}]}");
+        assertTrue(f.setLastModified(f.lastModified() + 4000));
+        assertEquals("bb", src.get().get(0).name(), "исправленный файл перечитан");
+    }
+
+    @Test
+    void sourceFallsBackToBuiltinWithoutFile() {
+        List<ChangeWatcher.Target> builtin = List.of(
+                new ChangeWatcher.Target("builtin", List.of(ChangeWatcher.Step.snap("main"))));
+        assertEquals(builtin, new TargetConfig.Source(null, ENV, () -> builtin).get());
+        assertEquals(builtin, new TargetConfig.Source(dir.resolve("missing.json").toFile(), ENV, () -> builtin).get());
+    }
+
+    private static void write(File f, String s) throws Exception {
+        Files.writeString(f.toPath(), s, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,79 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkerLeasesTest {
+
+    private static final long TTL = 10_000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void singleWorkerOwnsEverything() {
+        WorkerLeases a = new WorkerLeases(dir.toFile(), "a", TTL);
+        for (int i = 0; i < 10; i++) assertEquals("a", a.tryAcquire("t" + i));
+    }
+
+    @Test
+    void workersAgreeOnOneOwnerPerTarget() {
+        WorkerLeases a = new WorkerLeases(dir.toFile(), "a", TTL);
+        WorkerLeases b = new WorkerLeases(dir.toFile(), "b", TTL);
+        a.tryAcquire("warmup");
+        b.tryAcquire("warmup");
+
+        int ownedByA = 0;
+        for (int i = 0; i < 20; i++) {
+            String t = "target-" + i;
+            String first = i % 2 == 0 ? a.tryAcquire(t) : b.tryAcquire(t);
+            String second = i % 2 == 0 ? b.tryAcquire(t) : a.tryAcquire(t);
+            assertEquals(first, second, t);
+            if (first.equals("a")) ownedByA++;
+        }
+        assertTrue(ownedByA > 0 && ownedByA < 20, "цели делятся между воркерами: у a " + ownedByA);
+    }
+
+    @Test
+    void newPreferredWorkerTakesOverWithoutWaitingForRelease() {
+        WorkerLeases a = new WorkerLeases(dir.toFile(), "a", TTL);
+        String t = targetPreferring("b");
+        assertEquals("a", a.tryAcquire(t), "пока b нет — цель у a");
+
+        // b присоединился и опрашивает цель раньше, чем a её отпустил
+        WorkerLeases b = new WorkerLeases(dir.toFile(), "b", TTL);
+        assertEquals("b", b.tryAcquire(t));
+        assertEquals("b", a.tryAcquire(t), "a видит нового владельца и не проверяет цель");
+    }
+
+    @Test
+    void deadOwnerIsReplacedBeforeItsLeaseExpires() {
+        WorkerLeases a = new WorkerLeases(dir.toFile(), "a", TTL);
+        WorkerLeases b = new WorkerLeases(dir.toFile(), "b", TTL);
+        b.tryAcquire("warmup");
+        String t = targetPreferring("a");
+        assertEquals("a", a.tryAcquire(t));
+        assertEquals("a", b.tryAcquire(t), "живой владелец сохраняет цель");
+
+        // a упал: heartbeat устарел, lease ещё действует
+        File hb = dir.resolve("workers").resolve("a.hb").toFile();
+        assertTrue(hb.setLastModified(System.currentTimeMillis() - TTL - 1000));
+        assertEquals("b", b.tryAcquire(t));
+    }
+
+    /**
+     * Цель, которую при живых a и b предпочитает worker (живые — по имени, индекс = hash mod 2).
+     */
+    private static String targetPreferring(String worker) {
+        int want = worker.equals("a") ? 0 : 1;
+        for (int i = 0; ; i++) {
+            String t = "target-" + i;
+            if (Math.floorMod(t.hashCode(), 2) == want) return t;
+        }
+    }
+}